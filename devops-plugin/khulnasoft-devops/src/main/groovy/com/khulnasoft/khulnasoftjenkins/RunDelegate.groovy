@@ -115,19 +115,29 @@ public class RunDelegate {
     @Whitelisted
     def sendTestReport(int pageSize) {
         def startTime = System.currentTimeMillis()
-        def results = getJunitReport(pageSize, null)
-        def endTime = System.currentTimeMillis()
-        def duration = endTime - startTime
-
-        // Log metrics for monitoring
-        LOG.info("Test report generated for build ${build.getNumber()} in ${duration}ms with ${results.size()} pages")
-
+        Iterator<JunitTestCaseGroup> pages
+        try {
+            pages = TestCaseResultUtils.getBuildReportPages(build, pageSize, null)
+        } catch (Exception ex) {
+            LOG.log(Level.SEVERE, "failed to get junit report", ex)
+            return
+        }
         def buildEvent = getBuildEvent()
         String sourceName = KhulnasoftJenkinsInstallation.get().getMetadataSource("test")
-        results.eachWithIndex { junitResult, idx ->
-            Map pagedEvent = buildEvent + ["testsuite": junitResult, "page_num": idx + 1, "generation_time_ms": duration]
+        //send page by page, only the current page is held in memory
+        int pageNum = 0
+        while (pages.hasNext()) {
+            def pageStartTime = System.currentTimeMillis()
+            JunitTestCaseGroup junitResult = pages.next()
+            pageNum++
+            Map pagedEvent = buildEvent + ["testsuite": junitResult, "page_num": pageNum,
+                                           "generation_time_ms": System.currentTimeMillis() - pageStartTime]
             send(pagedEvent, sourceName)
         }
+        def duration = System.currentTimeMillis() - startTime
+
+        // Log metrics for monitoring
+        LOG.info("Test report sent for build ${build.getNumber()} in ${duration}ms with ${pageNum} pages")
     }
 
     @Whitelisted
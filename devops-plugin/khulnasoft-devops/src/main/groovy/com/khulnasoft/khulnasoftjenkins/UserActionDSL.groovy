@@ -5,9 +5,11 @@ import com.khulnasoft.khulnasoftjenkins.utils.LogEventHelper
 import hudson.model.Run
 import hudson.model.TaskListener
 import jenkins.model.Jenkins
+import org.apache.commons.codec.digest.DigestUtils
 import org.apache.commons.lang.StringUtils
 import org.codehaus.groovy.control.CompilerConfiguration
 import org.codehaus.groovy.control.customizers.ImportCustomizer
+import org.codehaus.groovy.runtime.InvokerHelper
 import org.jenkinsci.plugins.scriptsecurity.scripts.ScriptApproval
 import org.jenkinsci.plugins.scriptsecurity.scripts.languages.GroovyLanguage
 import org.kohsuke.stapler.jelly.groovy.GroovyClosureScript
@@ -19,6 +21,8 @@ import static com.khulnasoft.khulnasoftjenkins.utils.LogEventHelper.getBuildVari
 
 public class UserActionDSL {
     static final LOG = Logger.getLogger(LoggingRunListener.class.name)
+    // the compiled user script, replaced when the script text or timestamp changes
+    private static volatile CompiledScript compiledScript
 
     public void perform(Run build, TaskListener listener, GroovyCodeSource codeSource) {
         try {
@@ -38,14 +42,7 @@ public class UserActionDSL {
                     //check approval, will throw UnapprovedUsageException
                     ScriptApproval.get().using(scriptText, GroovyLanguage.get())
                     //call setDelegate to RunDelegate instance and run
-                    CompilerConfiguration cc = new CompilerConfiguration();
-                    cc.scriptBaseClass = GroovyClosureScript.class.name;
-                    ImportCustomizer ic = new ImportCustomizer()
-                    ic.addStaticStars(LogEventHelper.class.name)
-                    ic.addStarImport("jenkins.model")
-                    cc.addCompilationCustomizers(ic)
-                    GroovyClosureScript dslScript = (GroovyClosureScript) new GroovyShell(Jenkins.instance.pluginManager.uberClassLoader, binding, cc)
-                            .parse(codeSource)
+                    GroovyClosureScript dslScript = (GroovyClosureScript) InvokerHelper.createScript(getScriptClass(codeSource), binding)
                     dslScript.setDelegate(delegate);
                     dslScript.run()
                 } catch (Exception e) {
@@ -59,4 +56,44 @@ public class UserActionDSL {
         }
     }
 
+    /**
+     * Compile the script once per script version, each run creates a new instance of the class
+     *
+     * @param codeSource the user script, its name contains the script timestamp
+     * @return the compiled script class
+     */
+    static Class getScriptClass(GroovyCodeSource codeSource) {
+        String key = codeSource.name + ":" + DigestUtils.sha256Hex(codeSource.scriptText)
+        CompiledScript compiled = compiledScript
+        if (compiled == null || compiled.key != key) {
+            synchronized (UserActionDSL.class) {
+                compiled = compiledScript
+                if (compiled == null || compiled.key != key) {
+                    CompilerConfiguration cc = new CompilerConfiguration();
+                    cc.scriptBaseClass = GroovyClosureScript.class.name;
+                    ImportCustomizer ic = new ImportCustomizer()
+                    ic.addStaticStars(LogEventHelper.class.name)
+                    ic.addStarImport("jenkins.model")
+                    cc.addCompilationCustomizers(ic)
+                    // classes of previous version are released with the old class loader
+                    GroovyClassLoader loader = new GroovyClassLoader(Jenkins.instance.pluginManager.uberClassLoader, cc)
+                    compiled = new CompiledScript(key, loader.parseClass(codeSource))
+                    compiledScript = compiled
+                    LOG.log(Level.FINE, "compiled user script {0}", codeSource.name)
+                }
+            }
+        }
+        return compiled.scriptClass
+    }
+
+    private static class CompiledScript {
+        final String key
+        final Class scriptClass
+
+        CompiledScript(String key, Class scriptClass) {
+            this.key = key
+            this.scriptClass = scriptClass
+        }
+    }
+
 }
\ No newline at end of file
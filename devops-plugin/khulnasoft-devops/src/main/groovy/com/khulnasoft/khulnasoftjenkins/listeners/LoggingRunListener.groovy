@@ -6,7 +6,9 @@ import hudson.model.listeners.RunListener
 import hudson.model.AbstractBuild
 import hudson.model.Run
 import com.khulnasoft.khulnasoftjenkins.KhulnasoftJenkinsInstallation
-import com.khulnasoft.khulnasoftjenkins.utils.KhulnasoftLogService
+import com.khulnasoft.khulnasoftjenkins.UserActionDSL
+import com.khulnasoft.khulnasoftjenkins.utils.EventBuilder
+import com.khulnasoft.khulnasoftjenkins.utils.PostBuildExecutor
 import com.khulnasoft.khulnasoftjenkins.model.EventType
 
 import java.util.logging.Level
@@ -16,6 +18,8 @@ import java.util.logging.Logger
  * Logging Run Listener for Khulnasoft Jenkins Plugin.
  * This listener monitors build events and sends structured log events to Khulnasoft.
  * It provides enhanced logging capabilities for build lifecycle events.
+ * Events are built and sent, and the user action script is run, on {@link PostBuildExecutor}, in order per job,
+ * so the callbacks return immediately.
  */
 @Extension
 class LoggingRunListener extends RunListener<Run> {
@@ -29,8 +33,11 @@ class LoggingRunListener extends RunListener<Run> {
 
             // Send build start event to Khulnasoft if logging is enabled
             if (isKhulnasoftLoggingEnabled(run)) {
-                def buildEvent = createBuildEvent(run, "started")
-                sendToKhulnasoft(buildEvent, "build.lifecycle")
+                long timestamp = System.currentTimeMillis()
+                submit(run, "started") {
+                    def buildEvent = createBuildEvent(run, "started", timestamp)
+                    sendToKhulnasoft(buildEvent, "build.lifecycle")
+                }
             }
         } catch (Exception e) {
             LOG.log(Level.WARNING, "Error in onStarted for build ${run.getNumber()}", e)
@@ -45,17 +52,47 @@ class LoggingRunListener extends RunListener<Run> {
 
             // Send build completion event to Khulnasoft if logging is enabled
             if (isKhulnasoftLoggingEnabled(run)) {
-                def buildEvent = createBuildEvent(run, "completed")
-                buildEvent.put("result", buildResult)
-                buildEvent.put("duration_ms", run.getDuration())
+                long timestamp = System.currentTimeMillis()
+                submit(run, "completed") {
+                    sendCompletedEvent(run, buildResult, timestamp)
+                }
+            }
 
-                sendToKhulnasoft(buildEvent, "build.lifecycle")
+            // Run the user action script, e.g. test report and coverage extraction
+            def installation = KhulnasoftJenkinsInstallation.get()
+            if (installation.isValid() && installation.getScript()) {
+                submit(run, "user action") {
+                    new UserActionDSL().perform(run, listener, installation.getCode())
+                }
             }
         } catch (Exception e) {
             LOG.log(Level.WARNING, "Error in onCompleted for build ${run.getNumber()}", e)
         }
     }
 
+    /**
+     * Send the build completion event on the calling thread, used to replay builds which completed earlier,
+     * the caller throttles and checkpoints the replay so the event must be sent when this returns
+     */
+    void sendCompleted(Run run) {
+        try {
+            if (isKhulnasoftLoggingEnabled(run)) {
+                def buildResult = run.getResult()?.toString() ?: "UNKNOWN"
+                sendCompletedEvent(run, buildResult, System.currentTimeMillis())
+            }
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Error in sendCompleted for build ${run.getNumber()}", e)
+        }
+    }
+
+    private void sendCompletedEvent(Run run, String buildResult, long timestamp) {
+        def buildEvent = createBuildEvent(run, "completed", timestamp)
+                .put("result", buildResult)
+                .put("duration_ms", run.getDuration())
+
+        sendToKhulnasoft(buildEvent, "build.lifecycle")
+    }
+
     @Override
     void onFinalized(Run run) {
         try {
@@ -63,14 +100,25 @@ class LoggingRunListener extends RunListener<Run> {
 
             // Send build finalization event to Khulnasoft if logging is enabled
             if (isKhulnasoftLoggingEnabled(run)) {
-                def buildEvent = createBuildEvent(run, "finalized")
-                sendToKhulnasoft(buildEvent, "build.lifecycle")
+                long timestamp = System.currentTimeMillis()
+                submit(run, "finalized") {
+                    def buildEvent = createBuildEvent(run, "finalized", timestamp)
+                    sendToKhulnasoft(buildEvent, "build.lifecycle")
+                }
             }
         } catch (Exception e) {
             LOG.log(Level.WARNING, "Error in onFinalized for build ${run.getNumber()}", e)
         }
     }
 
+    /**
+     * Run the reporting task on the post-build executor, after earlier tasks of the same job
+     */
+    private void submit(Run run, String phase, Closure task) {
+        PostBuildExecutor.get().submit(run.getParent().getFullName(),
+                "${run.getParent().getFullName()} #${run.getNumber()} ${phase}".toString(), task as Runnable)
+    }
+
     /**
      * Check if Khulnasoft logging is enabled for this build/project
      */
@@ -89,15 +137,15 @@ class LoggingRunListener extends RunListener<Run> {
     }
 
     /**
-     * Create a standardized build event map
+     * Create a standardized build event
      */
-    private Map createBuildEvent(Run run, String eventType) {
-        def event = [:]
-        event.put("event_type", eventType)
-        event.put("build_number", run.getNumber())
-        event.put("job_name", run.getParent().getFullName())
-        event.put("build_url", run.getUrl())
-        event.put("timestamp", System.currentTimeMillis())
+    private EventBuilder createBuildEvent(Run run, String eventType, long timestamp) {
+        def event = new EventBuilder(EventType.BUILD_REPORT)
+                .put("event_type", eventType)
+                .put("build_number", (long) run.getNumber())
+                .put("job_name", run.getParent().getFullName())
+                .put("build_url", run.getUrl())
+                .put("timestamp", timestamp)
 
         if (run instanceof AbstractBuild) {
             def build = (AbstractBuild) run
@@ -111,12 +159,12 @@ class LoggingRunListener extends RunListener<Run> {
     /**
      * Send event to Khulnasoft logging system
      */
-    private void sendToKhulnasoft(Map event, String metadataSource) {
+    private void sendToKhulnasoft(EventBuilder event, String metadataSource) {
         try {
             def installation = KhulnasoftJenkinsInstallation.get()
             if (installation != null) {
                 def sourceName = installation.getMetadataSource(metadataSource)
-                KhulnasoftLogService.getInstance().send(event, EventType.BUILD_REPORT, sourceName)
+                event.source(sourceName).send()
             }
         } catch (Exception e) {
             LOG.log(Level.WARNING, "Error sending event to Khulnasoft", e)
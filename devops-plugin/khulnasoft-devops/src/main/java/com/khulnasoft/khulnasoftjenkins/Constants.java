@@ -48,8 +48,36 @@ public class Constants {
     public static final int JDK_FINE_LOG_BATCH = Integer.getInteger("khulnasoftins.debugLogBatchSize", 128);
     // max buffer size for raw data (usually log file and console)
     public static final int MAX_BATCH_SIZE = 1 << 23;
+    // how long the sender waits for more events before posting a batch which is not full yet
+    public static final long BATCH_LINGER_MILLIS = Long.getLong("khulnasoftins.batchLingerMillis", 1000);
+    // connect and read timeout for http posting
+    public static final int HTTP_TIMEOUT_MILLIS = Integer.getInteger("khulnasoftins.httpTimeoutMillis", 30000);
     // use gzip for http posting
     public static final int GZIP_THRESHOLD = 1024; //1kb
+    public static final boolean GZIP_ENABLED = Boolean.parseBoolean(System.getProperty("khulnasoftins.gzip", "true"));
+    // events are spilled to JENKINS_HOME/khulnasoft-spill when the queue is full or the endpoint is down
+    public static final boolean SPILL_ENABLED = Boolean.parseBoolean(System.getProperty("khulnasoftins.spill", "true"));
+    public static final String SPILL_DIR_NAME = "khulnasoft-spill";
+    // must be larger than MAX_BATCH_SIZE since a failed batch is spilled as one entry, a batch holding more than one event
+    // is capped at MAX_BATCH_SIZE, default 32 MiB
+    public static final int SPILL_SEGMENT_SIZE = Math.max(Integer.getInteger("khulnasoftins.spillSegmentSize", 1 << 25), MAX_BATCH_SIZE + 4096);
+    // each EventType lane has its own journal, 32 segments take 1 GiB disk space at most per lane, about 6 GiB in total
+    public static final int SPILL_MAX_SEGMENTS = Integer.getInteger("khulnasoftins.spillMaxSegments", 32);
+    // a failed post is retried up to retriesOnError times, backoff doubles from the base delay up to the max, with jitter
+    public static final long RETRY_BACKOFF_MILLIS = Long.getLong("khulnasoftins.retryBackoffMillis", 500);
+    public static final long RETRY_MAX_BACKOFF_MILLIS = Long.getLong("khulnasoftins.retryMaxBackoffMillis", 30000);
+    // posting is paused after consecutive failures, events are spilled until a probe post succeeds
+    public static final int CIRCUIT_FAILURE_THRESHOLD = Integer.getInteger("khulnasoftins.circuitFailureThreshold", 5);
+    public static final long CIRCUIT_OPEN_MILLIS = Long.getLong("khulnasoftins.circuitOpenMillis", 30000);
+    // BuildInfoArchiver replays jobs in parallel, builds of one job in order, at most replayEventsPerSecond build and console events
+    public static final int REPLAY_THREADS = Math.max(1, Integer.getInteger("khulnasoftins.replayThreads", 4));
+    public static final int REPLAY_EVENTS_PER_SECOND = Integer.getInteger("khulnasoftins.replayEventsPerSecond", 2000);
+    public static final String REPLAY_DIR_NAME = "khulnasoft-replay";
+    // post-build reporting runs off the RunListener thread, in order per job, tasks are dropped once the queue is full
+    public static final int POST_BUILD_THREADS = Math.max(1, Integer.getInteger("khulnasoftins.postBuildThreads", 2));
+    public static final int POST_BUILD_QUEUE_SIZE = Math.max(1, Integer.getInteger("khulnasoftins.postBuildQueueSize", 1000));
+    public static final int POST_BUILD_JOB_QUEUE_SIZE = Math.max(1, Integer.getInteger("khulnasoftins.postBuildJobQueueSize", 100));
+    public static final long POST_BUILD_TIMEOUT_SECONDS = Long.getLong("khulnasoftins.postBuildTimeoutSeconds", 300);
     // 16 KB for slave log
     public static final int SLAVE_LOG_BUFFER_SIZE = MIN_BUFFER_SIZE * 4;
     public static final String COVERAGE_OVERALL_NAME = "project";
@@ -1,18 +1,25 @@
 package com.khulnasoft.khulnasoftjenkins;
 
-import com.khulnasoft.khulnasoftjenkins.model.EventType;
+import com.khulnasoft.khulnasoftjenkins.utils.EventBuilder;
+import com.khulnasoft.khulnasoftjenkins.utils.JvmRuntimeMetrics;
 import com.khulnasoft.khulnasoftjenkins.utils.KhulnasoftLogService;
+import com.khulnasoft.khulnasoftjenkins.utils.PostBuildExecutor;
 import hudson.Extension;
 import hudson.model.*;
 import hudson.model.Queue;
 import jenkins.model.Jenkins;
+import jenkins.util.Timer;
 
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryPoolMXBean;
 import java.lang.management.MemoryUsage;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import static com.khulnasoft.khulnasoftjenkins.model.EventType.QUEUE_INFO;
 import static com.khulnasoft.khulnasoftjenkins.model.EventType.SLAVE_INFO;
@@ -24,99 +31,284 @@ import static com.khulnasoft.khulnasoftjenkins.utils.LogEventHelper.getSlaveStat
 
 @Extension
 public class HealthMonitor extends AsyncPeriodicWork {
+    private static final Logger LOG = Logger.getLogger(HealthMonitor.class.getName());
+    //queue is sampled every 45 seconds by default, down to every 5 seconds while it is growing
+    private long queueMaxPeriod = TimeUnit.SECONDS.toMillis(Math.max(20, Long.getLong("com.khulnasoft.khulnasoftjenkins.queueMonitorSeconds", 45)));
+    private long queueMinPeriod = Math.min(queueMaxPeriod, TimeUnit.SECONDS.toMillis(Math.max(1, Long.getLong("com.khulnasoft.khulnasoftjenkins.queueMinMonitorSeconds", 5))));
     //make sure no less than 2 minutes, default is 8 minutes
     private long slaveUpdatePeriod = TimeUnit.MINUTES.toMillis(Math.max(2, Long.getLong("com.khulnasoft.khulnasoftjenkins.slaveMonitorMinutes", 8)));
-    private long period = TimeUnit.SECONDS.toMillis(Math.max(20, Long.getLong("com.khulnasoft.khulnasoftjenkins.queueMonitorSeconds", 45)));
+    private long masterUpdatePeriod = TimeUnit.MINUTES.toMillis(Math.max(1, Long.getLong("com.khulnasoft.khulnasoftjenkins.masterMonitorMinutes", 8)));
+    private long jvmUpdatePeriod = TimeUnit.MINUTES.toMillis(Math.max(1, Long.getLong("com.khulnasoft.khulnasoftjenkins.jvmMonitorMinutes", 8)));
+    //jvm runtime and post-build executor summary, default every minute, 0 to turn it off
+    private long runtimeUpdatePeriod = TimeUnit.SECONDS.toMillis(Long.getLong("com.khulnasoft.khulnasoftjenkins.runtimeMonitorSeconds", 60));
+    //unchanged queue items, agents and memory pools are only resent in full snapshot, default every 30 minutes
+    private long fullSnapshotPeriod = TimeUnit.MINUTES.toMillis(Math.max(1, Long.getLong("com.khulnasoft.khulnasoftjenkins.fullSnapshotMinutes", 30)));
+    //memory pool is resent when used or committed size moved by the percentage of its max size
+    private long memoryChangePercent = Math.max(0, Long.getLong("com.khulnasoft.khulnasoftjenkins.memoryChangePercent", 5));
 
-    private Set<String> slaveNames = new HashSet<>();
-    //use protected to allow tweak it in testcase
-    protected long lastAccessTime = System.currentTimeMillis();
+    //agent status by name, as sent last time
+    private Map<String, String> slaveStatus = new HashMap<>();
+    //queue item state by id, as sent last time
+    private Map<Long, QueueItemState> queueItems = new HashMap<>();
+    //used and committed size by memory pool name, as sent last time
+    private Map<String, long[]> memoryPools = new HashMap<>();
+    private final JvmRuntimeMetrics runtimeMetrics = new JvmRuntimeMetrics();
+
+    private final Collector queueCollector = new Collector("queue", queueMaxPeriod, this::sendPendingQueue);
+    private final List<Collector> collectors = new ArrayList<>();
 
     public HealthMonitor() {
         super("Khulnasoft data monitor");
+        collectors.add(queueCollector);
+        //agents and master are reported after the first period, nodes are still connecting at startup
+        collectors.add(new Collector("agent", slaveUpdatePeriod, this::sendSlaveUpdate).delay(slaveUpdatePeriod));
+        collectors.add(new Collector("master", masterUpdatePeriod, fullSnapshot -> sendMasterUpdate()).delay(masterUpdatePeriod));
+        collectors.add(new Collector("jvm", jvmUpdatePeriod, this::sendMemoryUpdate).delay(jvmUpdatePeriod));
+        if (runtimeUpdatePeriod > 0) {
+            collectors.add(new Collector("post_build", Math.max(queueMinPeriod, runtimeUpdatePeriod), fullSnapshot -> PostBuildExecutor.get().sendMetrics()));
+            //first run only takes the baseline
+            collectors.add(new Collector("runtime", Math.max(queueMinPeriod, runtimeUpdatePeriod), fullSnapshot -> runtimeMetrics.send()));
+        }
     }
 
+    /**
+     * Run the collectors which are due, in parallel when there are more than one
+     */
     @Override
     protected void execute(TaskListener listener) throws IOException, InterruptedException {
         if (!KhulnasoftJenkinsInstallation.get().isEnabled()) {
             return;
         }
-        sendPendingQueue();
-        if (System.currentTimeMillis() - lastAccessTime < slaveUpdatePeriod) {
+        long now = System.currentTimeMillis();
+        List<Collector> dueCollectors = new ArrayList<>(collectors.size());
+        for (Collector collector : collectors) {
+            if (collector.isDue(now)) {
+                dueCollectors.add(collector);
+            }
+        }
+        if (dueCollectors.size() == 1) {
+            dueCollectors.get(0).run(now);
             return;
         }
-        lastAccessTime = System.currentTimeMillis();
-        sendNodeUpdate();
-        listener.getLogger().println("execute sendNodeUpdate");
+        List<Future<?>> futures = new ArrayList<>(dueCollectors.size());
+        for (Collector collector : dueCollectors) {
+            futures.add(Timer.get().submit(() -> collector.run(now)));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                // collectors log runtime exceptions themselves, only errors get here
+                LOG.log(Level.WARNING, "health monitor collector failed", e.getCause());
+            }
+        }
     }
 
-    private void sendNodeUpdate() {
+    private void sendSlaveUpdate(boolean fullSnapshot) {
         Map<String, Map<String, Object>> slaveStats = getSlaveStats();
-        Set<String> aliveSlaves = slaveStats.keySet();
+        Map<String, String> aliveSlaves = new HashMap<>();
+        List<Map<String, Object>> changedSlaves = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Object>> entry : slaveStats.entrySet()) {
+            String status = String.valueOf(entry.getValue().get("status"));
+            aliveSlaves.put(entry.getKey(), status);
+            if (fullSnapshot || !status.equals(slaveStatus.get(entry.getKey()))) {
+                changedSlaves.add(entry.getValue());
+            }
+        }
         //send event one by one instead of list to aid search
-        KhulnasoftLogService.getInstance().sendBatch(slaveStats.values(), SLAVE_INFO);
-        List<Map> removedSlavs = new ArrayList<>();
-        for (String slaveName : slaveNames) {
-            if (!aliveSlaves.contains(slaveName)) {
-                Map event = new HashMap();
-                event.put(Constants.TAG, SLAVE_TAG_NAME);
-                event.put(NODE_NAME, slaveName);
-                event.put("status", "removed");
-                removedSlavs.add(event);
+        KhulnasoftLogService.getInstance().sendBatch(changedSlaves, SLAVE_INFO);
+        for (String slaveName : slaveStatus.keySet()) {
+            if (!aliveSlaves.containsKey(slaveName)) {
+                new EventBuilder(SLAVE_INFO)
+                        .put(Constants.TAG, SLAVE_TAG_NAME)
+                        .put(NODE_NAME, slaveName)
+                        .put("status", "removed")
+                        .send();
             }
         }
-        KhulnasoftLogService.getInstance().sendBatch(removedSlavs, SLAVE_INFO);
+        //replace slave status, only the agent collector reads and modifies slaveStatus, so it is safe without lock
+        slaveStatus = aliveSlaves;
+    }
+
+    private void sendMasterUpdate() {
         KhulnasoftLogService.getInstance().sendBatch(getRunningJob(), QUEUE_INFO);
-        //replace slave names, at one time should only one thread is running, so modify slaveNames is safe without lock
-        slaveNames = aliveSlaves;
         //update master stats
         Map masterEvent = getMasterStats();
         masterEvent.put("item", name);
         masterEvent.put(Constants.TAG, Constants.QUEUE_TAG_NAME);
         KhulnasoftLogService.getInstance().send(masterEvent, QUEUE_INFO);
+    }
+
+    private void sendMemoryUpdate(boolean fullSnapshot) {
         //send memory details
-        List<Map> memoryUsages = new ArrayList();
         for (MemoryPoolMXBean memoryPoolMXBean : ManagementFactory.getMemoryPoolMXBeans()) {
-            Map<String, Object> memoryPoolUsage = new HashMap();
             MemoryUsage usageDetail = memoryPoolMXBean.getUsage();
-            memoryPoolUsage.put(Constants.TAG, "jvm_memory");
-            memoryPoolUsage.put("memory_pool", memoryPoolMXBean.getName());
-            memoryPoolUsage.put("init_size", usageDetail.getInit() >> 20);
-            memoryPoolUsage.put("max_size", usageDetail.getMax() >> 20);
-            memoryPoolUsage.put("committed_size", usageDetail.getCommitted() >> 20);
-            memoryPoolUsage.put("used_size", usageDetail.getUsed() >> 20);
-            memoryUsages.add(memoryPoolUsage);
-        }
-        KhulnasoftLogService.getInstance().sendBatch(memoryUsages, EventType.QUEUE_INFO);
+            if (!fullSnapshot && !isMemoryChanged(memoryPoolMXBean.getName(), usageDetail)) {
+                continue;
+            }
+            memoryPools.put(memoryPoolMXBean.getName(), new long[]{usageDetail.getUsed(), usageDetail.getCommitted()});
+            new EventBuilder(QUEUE_INFO)
+                    .put(Constants.TAG, "jvm_memory")
+                    .put("memory_pool", memoryPoolMXBean.getName())
+                    .put("init_size", usageDetail.getInit() >> 20)
+                    .put("max_size", usageDetail.getMax() >> 20)
+                    .put("committed_size", usageDetail.getCommitted() >> 20)
+                    .put("used_size", usageDetail.getUsed() >> 20)
+                    .send();
+        }
+    }
+
+    /**
+     * @param poolName memory pool name
+     * @param usage    current usage
+     * @return true if used or committed size moved beyond the threshold since last sent
+     */
+    private boolean isMemoryChanged(String poolName, MemoryUsage usage) {
+        long[] last = memoryPools.get(poolName);
+        if (last == null) {
+            return true;
+        }
+        //max is undefined for some pools
+        long capacity = usage.getMax() > 0 ? usage.getMax() : usage.getCommitted();
+        long threshold = capacity / 100 * memoryChangePercent;
+        return Math.abs(usage.getUsed() - last[0]) > threshold || Math.abs(usage.getCommitted() - last[1]) > threshold;
     }
 
-    private void sendPendingQueue() {
-        //send queue items
+    private void sendPendingQueue(boolean fullSnapshot) {
+        long now = System.currentTimeMillis();
+        //send new queue items and items whose state changed
         Queue.Item[] items = Jenkins.getInstance().getQueue().getItems();
-        List<Map> queue = new ArrayList<>(items.length);
+        Map<Long, QueueItemState> currentItems = new HashMap<>(items.length * 2);
         for (int i = 0; i < items.length; i++) {
             Queue.Item item = items[i];
-            Map queueItem = new HashMap();
-            queueItem.put("queue_id", item.getId());
-            queueItem.put("queue_time", (System.currentTimeMillis() - item.getInQueueSince()) / 1000f);
-            queueItem.put("stuck", item.isStuck());
-            queueItem.put("block_reason", item.getWhy());
-            queueItem.put("concurrent_build", item.task.isConcurrentBuild());
-            queueItem.put(Constants.TAG, Constants.QUEUE_WAITING_ITEM_NAME);
+            QueueItemState state = new QueueItemState(item.isStuck(), item.getWhy());
+            currentItems.put(item.getId(), state);
+            if (!fullSnapshot && state.equals(queueItems.get(item.getId()))) {
+                continue;
+            }
             String jobName;
             if (item.task instanceof Job) {
                 jobName = ((Job) item.task).getFullName();
             } else {
                 jobName = item.task.getUrl();
             }
-            queueItem.put("task", jobName);
-            queue.add(queueItem);
+            new EventBuilder(QUEUE_INFO)
+                    .put("queue_id", item.getId())
+                    .put("queue_time", (now - item.getInQueueSince()) / 1000f)
+                    .put("stuck", state.stuck)
+                    .put("block_reason", state.why)
+                    .put("concurrent_build", item.task.isConcurrentBuild())
+                    .put(Constants.TAG, Constants.QUEUE_WAITING_ITEM_NAME)
+                    .put("task", jobName)
+                    .send();
+        }
+        adjustQueuePeriod(items.length, queueItems.size());
+        //items left the queue are dropped
+        queueItems = currentItems;
+    }
+
+    /**
+     * Halve the queue sampling period while the queue is growing, double it otherwise
+     *
+     * @param size     current queue size
+     * @param lastSize queue size of last sample
+     */
+    private void adjustQueuePeriod(int size, int lastSize) {
+        long period = queueCollector.period;
+        if (size > lastSize) {
+            period = Math.max(queueMinPeriod, period / 2);
+        } else {
+            period = Math.min(queueMaxPeriod, period * 2);
+        }
+        if (period != queueCollector.period) {
+            LOG.log(Level.FINE, "queue size {0}, sample every {1} ms", new Object[]{size, period});
+            queueCollector.period = period;
         }
-        KhulnasoftLogService.getInstance().sendBatch(queue, QUEUE_INFO);
     }
 
+    /**
+     * Queue item fields which are compared to detect a change, queue time is not since it always grows
+     */
+    private static final class QueueItemState {
+        private final boolean stuck;
+        private final String why;
+
+        QueueItemState(boolean stuck, String why) {
+            this.stuck = stuck;
+            this.why = why;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof QueueItemState)) {
+                return false;
+            }
+            QueueItemState that = (QueueItemState) o;
+            return stuck == that.stuck && Objects.equals(why, that.why);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(stuck, why);
+        }
+    }
+
+    /**
+     * @return the shortest queue sampling period, collectors decide themselves whether they are due
+     */
     @Override
     public long getRecurrencePeriod() {
-        return period;
+        return queueMinPeriod;
+    }
+
+    private interface SnapshotTask {
+        /**
+         * @param fullSnapshot true to send all data, false to send changes only
+         */
+        void collect(boolean fullSnapshot);
+    }
+
+    /**
+     * Collector with its own cadence, run by the monitor when due
+     */
+    private final class Collector {
+        private final String name;
+        private final SnapshotTask task;
+        // updated by the collector itself between runs, and read by the monitor thread
+        private volatile long period;
+        private volatile long nextRunTime;
+        private long lastSnapshotTime;
+
+        Collector(String name, long period, SnapshotTask task) {
+            this.name = name;
+            this.period = period;
+            this.task = task;
+        }
+
+        Collector delay(long delay) {
+            nextRunTime = System.currentTimeMillis() + delay;
+            return this;
+        }
+
+        boolean isDue(long now) {
+            return now >= nextRunTime;
+        }
+
+        void run(long now) {
+            boolean fullSnapshot = now - lastSnapshotTime >= fullSnapshotPeriod;
+            if (fullSnapshot) {
+                lastSnapshotTime = now;
+            }
+            try {
+                task.collect(fullSnapshot);
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "failed to collect " + name + " data", e);
+            } finally {
+                nextRunTime = now + period;
+            }
+        }
     }
 }
\ No newline at end of file
@@ -2,32 +2,35 @@ package com.khulnasoft.khulnasoftjenkins;
 
 import com.khulnasoft.khulnasoftjenkins.model.EventRecord;
 import com.khulnasoft.khulnasoftjenkins.model.EventType;
+import com.khulnasoft.khulnasoftjenkins.utils.CircuitBreaker;
+import com.khulnasoft.khulnasoftjenkins.utils.HecSender;
 import com.khulnasoft.khulnasoftjenkins.utils.LogConsumer;
+import com.khulnasoft.khulnasoftjenkins.utils.LogRecordEvent;
 import com.khulnasoft.khulnasoftjenkins.utils.KhulnasoftLogService;
+import com.khulnasoft.khulnasoftjenkins.utils.RingBuffer;
+import com.khulnasoft.khulnasoftjenkins.utils.SpillJournal;
 import hudson.model.Computer;
 import jenkins.model.Jenkins;
 
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.util.*;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.*;
-import java.util.logging.Formatter;
 
 import static com.khulnasoft.khulnasoftjenkins.Constants.JDK_FINE_LOG_BATCH;
 
 
 public class JdkKhulnasoftLogHandler extends Handler {
-    private Lock maintenanceLock = new ReentrantLock();
-
-    private List<EventRecord> verboseLogCache = Collections.synchronizedList(new ArrayList(JDK_FINE_LOG_BATCH));
+    // recursion guard, records logged while the handler is publishing on the same thread are discarded
+    private static final ThreadLocal<Boolean> PUBLISHING = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    // lock-free, every jdk logger call passes through this handler, room for a few batches while one is drained
+    private final RingBuffer<EventRecord> verboseLogCache = new RingBuffer<>(JDK_FINE_LOG_BATCH * 8);
+    // only one thread drains the cache at a time, others keep appending
+    private final AtomicBoolean draining = new AtomicBoolean(false);
     private Level filterLevel = Level.parse(System.getProperty(JdkKhulnasoftLogHandler.class.getName() + ".level", "INFO"));
-    private LogEventFormatter khulnasoftFormatter;
 
     public JdkKhulnasoftLogHandler() {
-        this.khulnasoftFormatter = new LogEventFormatter();
         setFilter(new LogFilter());
         setLevel(filterLevel);
     }
@@ -40,41 +43,68 @@ public class JdkKhulnasoftLogHandler extends Handler {
         if (!isLoggable(record)) {
             return;
         }
+        PUBLISHING.set(true);
+        try {
+            publishEvent(record);
+        } finally {
+            PUBLISHING.set(false);
+        }
+    }
+
+    private void publishEvent(LogRecord record) {
         // jdk logger shares metadata config of console log
         if (KhulnasoftJenkinsInstallation.get().isEventDisabled(EventType.CONSOLE_LOG)) {
             return;
         }
-        Map logEvent = khulnasoftFormatter.getEvent(record);
-        if (logEvent == null || logEvent.isEmpty()) {
-            return;
-        }
-        EventRecord logEventRecord = new EventRecord(logEvent, EventType.LOG);
-        logEventRecord.setSource("logger://" + record.getLoggerName());
+        // formatted on the sender thread
+        EventRecord logEventRecord = new LogRecordEvent(record);
         if (record.getLevel().intValue() < Level.INFO.intValue()) {
-            verboseLogCache.add(logEventRecord);
+            while (!verboseLogCache.offer(logEventRecord)) {
+                // full, help draining, or bypass the cache if another thread is already on it
+                if (!drain(Integer.MAX_VALUE)) {
+                    KhulnasoftLogService.getInstance().send(logEventRecord);
+                    return;
+                }
+            }
             if (verboseLogCache.size() >= JDK_FINE_LOG_BATCH) {
-                flush();
+                drain(JDK_FINE_LOG_BATCH);
             }
         } else {
             KhulnasoftLogService.getInstance().send(logEventRecord);
         }
-
     }
 
     @Override
     public void flush() {
-        if (this.verboseLogCache.isEmpty()) {
-            return;
+        drain(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Pass cached records to the log service in batches of {@link Constants#JDK_FINE_LOG_BATCH}
+     * @param max max number of records to drain
+     * @return false if another thread is draining
+     */
+    private boolean drain(int max) {
+        if (verboseLogCache.isEmpty()) {
+            return true;
+        }
+        if (!draining.compareAndSet(false, true)) {
+            return false;
         }
-        List copyList = new ArrayList();
         try {
-            maintenanceLock.lock();
-            copyList.addAll(verboseLogCache);
-            verboseLogCache.clear();
+            KhulnasoftLogService service = KhulnasoftLogService.getInstance();
+            int remaining = max;
+            while (remaining > 0) {
+                int drained = verboseLogCache.drain(service::send, Math.min(remaining, JDK_FINE_LOG_BATCH));
+                if (drained == 0) {
+                    break;
+                }
+                remaining -= drained;
+            }
         } finally {
-            maintenanceLock.unlock();
+            draining.set(false);
         }
-        KhulnasoftLogService.getInstance().sendBatch(copyList, EventType.LOG);
+        return true;
     }
 
     @Override
@@ -83,11 +113,17 @@ public class JdkKhulnasoftLogHandler extends Handler {
     }
 
     private static class LogFilter implements Filter {
+        // logger and class names are bounded in practice, the cache is reset in case they are not
+        private static final int MAX_CACHED_NAMES = 4096;
         //logger may trigger recursive call, need skip them
         private final String[] skipLoggerNames = {
                 KhulnasoftLogService.class.getName(), LogConsumer.class.getName(),
-                "jenkins.InitReactorRunner", "hudson.util.BootFailure",
+                // EventLane is package private
+                "com.khulnasoft.khulnasoftjenkins.utils.EventLane", HecSender.class.getName(),
+                SpillJournal.class.getName(), CircuitBreaker.class.getName(),
+                "sun.net.www.protocol.http", "jenkins.InitReactorRunner", "hudson.util.BootFailure",
                 "shaded.splk.org.apache.http", "hudson.node_monitors", "hudson.Extension"};
+        private final Map<String, Boolean> skipped = new ConcurrentHashMap<>();
 
         @Override
         public boolean isLoggable(LogRecord record) {
@@ -96,56 +132,32 @@ public class JdkKhulnasoftLogHandler extends Handler {
             if (logSource == null || loggerName == null) {
                 return false;
             }
-            for (int i = 0; i < skipLoggerNames.length; i++) {
-                String skipPrefix = skipLoggerNames[i];
-                if (logSource.startsWith(skipPrefix) || loggerName.startsWith(skipPrefix)) {
-                    return false;
-                }
+            if (isSkipped(loggerName) || (!logSource.equals(loggerName) && isSkipped(logSource))) {
+                return false;
             }
-            if (record.getThrown() != null) {
-                StackTraceElement[] cause = record.getThrown().getStackTrace();
-                for (StackTraceElement element : cause) {
-                    if (element.getClassName().equals(JdkKhulnasoftLogHandler.class.getName())) {
-                        KhulnasoftLogService.LOG.log(Level.SEVERE, "discard recursive log\n{0}", record.getMessage());
-                        return false;
-                    }
-                }
+            if (PUBLISHING.get() || KhulnasoftLogService.isSenderThread()) {
+                // logged while publishing another record, or while formatting and posting events
+                return false;
             }
             return true;
         }
-    }
-
-    private static class LogEventFormatter extends Formatter {
-        @Override
-        public String format(LogRecord record) {
-            return formatMessage(record);
-        }
 
-        public Map getEvent(LogRecord record) {
-            Map event = new HashMap<>();
-            event.put("thread_id", record.getThreadID());
-            event.put("level", record.getLevel().getName());
-            //event.put("level_int", record.getLevel().intValue());
-            event.put("message", formatMessage(record));
-            String source;
-            if (record.getSourceClassName() != null) {
-                source = record.getSourceClassName();
-                if (record.getSourceMethodName() != null) {
-                    source += " " + record.getSourceMethodName();
+        private boolean isSkipped(String name) {
+            Boolean skip = skipped.get(name);
+            if (skip == null) {
+                skip = false;
+                for (String skipPrefix : skipLoggerNames) {
+                    if (name.startsWith(skipPrefix)) {
+                        skip = true;
+                        break;
+                    }
                 }
-            } else {
-                source = record.getLoggerName();
-            }
-            event.put("log_source", source);
-            if (record.getLevel().intValue() > Level.INFO.intValue() && record.getThrown() != null) {
-                StringWriter sw = new StringWriter();
-                PrintWriter pw = new PrintWriter(sw);
-                record.getThrown().printStackTrace(pw);
-                pw.close();
-                String logStackTrace = sw.toString();
-                event.put("log_thrown", logStackTrace);
+                if (skipped.size() >= MAX_CACHED_NAMES) {
+                    skipped.clear();
+                }
+                skipped.put(name, skip);
             }
-            return event;
+            return skip;
         }
     }
 
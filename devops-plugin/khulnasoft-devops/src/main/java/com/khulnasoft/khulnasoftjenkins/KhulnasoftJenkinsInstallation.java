@@ -2,10 +2,15 @@ package com.khulnasoft.khulnasoftjenkins;
 
 import com.khulnasoft.khulnasoftjenkins.model.EventType;
 import com.khulnasoft.khulnasoftjenkins.model.MetaDataConfigItem;
+import com.khulnasoft.khulnasoftjenkins.utils.HecEnvelope;
+import com.khulnasoft.khulnasoftjenkins.utils.JobUrlMatcher;
 import com.khulnasoft.khulnasoftjenkins.utils.KhulnasoftLogService;
 import groovy.lang.GroovyCodeSource;
 import hudson.Extension;
 import hudson.Util;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
 import hudson.util.FormValidation;
 import jenkins.model.GlobalConfiguration;
 import jenkins.model.Jenkins;
@@ -32,6 +37,8 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -58,6 +65,7 @@ public class KhulnasoftJenkinsInstallation extends GlobalConfiguration {
     private static transient boolean logHandlerRegistered = false;
     private transient static final Logger LOG = Logger.getLogger(KhulnasoftJenkinsInstallation.class.getName());
     private transient volatile static KhulnasoftJenkinsInstallation cachedConfig;
+    private transient static final JobUrlMatcher WHITELIST_MATCHER = JobUrlMatcher.compile(JOB_CONSOLE_FILTER_WHITELIST_PATTERN);
     private transient static final Pattern uuidPattern = Pattern.compile("[0-9a-f]{8}-([0-9a-f]{4}-){3}[0-9a-f]{12}", CASE_INSENSITIVE);
     // Defaults plugin global config values
     private boolean enabled = false;
@@ -82,7 +90,6 @@ public class KhulnasoftJenkinsInstallation extends GlobalConfiguration {
     private Boolean globalPipelineFilter;
 
     //below are all transient properties
-    public transient Properties metaDataProperties = new Properties();
     //cached values, will not be saved to disk!
     private transient String jsonUrl;
     private transient String rawUrl;
@@ -92,6 +99,11 @@ public class KhulnasoftJenkinsInstallation extends GlobalConfiguration {
     private transient Set<MetaDataConfigItem> metadataItemSet = new HashSet<>();
     private transient String defaultMetaData;
     private transient Pattern ignoredJobPattern;
+    private transient JobUrlMatcher ignoredJobMatcher;
+    // read on every event, replaced as a whole by updateCache
+    private transient volatile ConfigSnapshot snapshot = ConfigSnapshot.DISABLED;
+    // rebuilt by updateCache and when Jenkins location changes, since the host may fall back to Jenkins url
+    private transient volatile HecEnvelope envelope;
 
     public KhulnasoftJenkinsInstallation(boolean useConfigFile) {
         if (useConfigFile) {
@@ -272,6 +284,8 @@ public class KhulnasoftJenkinsInstallation extends GlobalConfiguration {
     protected void updateCache() {
         if (!this.enabled) {
             //nothing to do if not enabled
+            snapshot = ConfigSnapshot.DISABLED;
+            envelope = null;
             return;
         }
         if (scriptPath != null) {
@@ -296,12 +310,13 @@ public class KhulnasoftJenkinsInstallation extends GlobalConfiguration {
                         ignoredJobs, ex.getDescription()});
             }
         }
+        ignoredJobMatcher = JobUrlMatcher.compile(ignoredJobPattern);
+        //the snapshot keeps its own copy, it is the only source of metadata
+        Properties metaDataProperties = new Properties();
         try {
             String scheme = useSSL ? "https://" : "http://";
             jsonUrl = scheme + host + ":" + port + JSON_ENDPOINT;
             rawUrl = scheme + host + ":" + port + RAW_ENDPOINT;
-            //discard previous metadata cache and load new one
-            metaDataProperties = new Properties();
             String combinedMetaData = Util.fixNull(defaultMetaData) + "\n" + Util.fixNull(metaDataConfig);
             if (!isEmpty(combinedMetaData)) {
                 metaDataProperties.load(new StringReader(combinedMetaData));
@@ -312,6 +327,9 @@ public class KhulnasoftJenkinsInstallation extends GlobalConfiguration {
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "update cache failed, khulnasoft host:" + host, e);
         }
+        snapshot = new ConfigSnapshot(enabled && host != null && token != null && jsonUrl != null && rawUrl != null,
+                jsonUrl, rawUrl, metaDataProperties);
+        envelope = HecEnvelope.build(this);
     }
 
     private void checkApprove(String scriptText) {
@@ -356,8 +374,7 @@ public class KhulnasoftJenkinsInstallation extends GlobalConfiguration {
      * @return true setup is completed
      */
     public boolean isValid() {
-        return enabled && host != null && token != null
-                && jsonUrl != null && rawUrl != null;
+        return snapshot.valid;
     }
 
     /**
@@ -407,15 +424,28 @@ public class KhulnasoftJenkinsInstallation extends GlobalConfiguration {
      * @return the configured metadata
      */
     public String getMetaData(String keyName) {
-        return metaDataProperties.getProperty(keyName);
+        return snapshot.metaData.get(keyName);
+    }
+
+    /**
+     * @return metadata envelope of each event type, built by updateCache, or on first use if the cache was not updated
+     */
+    public HecEnvelope getEnvelope() {
+        HecEnvelope current = envelope;
+        if (current == null) {
+            // may be built twice by concurrent callers, both are equal
+            current = HecEnvelope.build(this);
+            envelope = current;
+        }
+        return current;
     }
 
     public String getJsonUrl() {
-        return jsonUrl;
+        return snapshot.jsonUrl;
     }
 
     public String getRawUrl() {
-        return rawUrl;
+        return snapshot.rawUrl;
     }
 
     public boolean isEnabled() {
@@ -423,21 +453,22 @@ public class KhulnasoftJenkinsInstallation extends GlobalConfiguration {
     }
 
     public boolean isEventDisabled(EventType eventType) {
-        return !isValid() || metaDataProperties == null || "false".equals(metaDataProperties.getProperty(eventType.getKey("enabled")));
+        return snapshot.disabledTypes.contains(eventType);
     }
 
     public boolean isJobIgnored(String jobUrl) {
         boolean ignored = false;
-        if (JOB_CONSOLE_FILTER_WHITELIST_PATTERN != null) {
+        if (WHITELIST_MATCHER != null) {
             // white list via system properties
-            if (!JOB_CONSOLE_FILTER_WHITELIST_PATTERN.matcher(jobUrl).find()) {
+            if (!WHITELIST_MATCHER.find(jobUrl)) {
                 LOG.log(Level.FINE, "{0} is not in whitelist set by khulnasoftins.allowConsoleLogPattern", jobUrl);
                 ignored = true;
             }
         }
-        if (!ignored && ignoredJobPattern != null) {
+        JobUrlMatcher matcher = ignoredJobMatcher;
+        if (!ignored && matcher != null) {
             // black list
-            ignored = ignoredJobPattern.matcher(jobUrl).find();
+            ignored = matcher.find(jobUrl);
         }
         return ignored;
     }
@@ -586,8 +617,9 @@ public class KhulnasoftJenkinsInstallation extends GlobalConfiguration {
             return metadataHost;
         } else {
             //backwards compatible
-            if (metaDataProperties != null && metaDataProperties.containsKey("host")) {
-                return metaDataProperties.getProperty("host");
+            String configuredHost = snapshot.metaData.get("host");
+            if (configuredHost != null) {
+                return configuredHost;
             } else {
                 String url = null;
                 JenkinsLocationConfiguration jenkinsLocation = JenkinsLocationConfiguration.get();
@@ -618,8 +650,8 @@ public class KhulnasoftJenkinsInstallation extends GlobalConfiguration {
     public String getMetadataSource() {
         if (metadataSource != null) {
             return metadataSource;
-        } else if (metaDataProperties != null && metaDataProperties.containsKey("source")) {
-            return metaDataProperties.getProperty("source");
+        } else if (snapshot.metaData.containsKey("source")) {
+            return snapshot.metaData.get("source");
         } else {
             return "";
         }
@@ -666,4 +698,52 @@ public class KhulnasoftJenkinsInstallation extends GlobalConfiguration {
     public boolean isPipelineFilterEnabled() {
         return Boolean.TRUE.equals(globalPipelineFilter);
     }
+
+    /**
+     * Immutable view of the cached values, event types are resolved once so that
+     * {@link #isEventDisabled(EventType)} and {@link #getMetaData(String)} do not lock or build keys
+     */
+    private static final class ConfigSnapshot {
+        static final ConfigSnapshot DISABLED = new ConfigSnapshot(false, null, null, new Properties());
+
+        private final boolean valid;
+        private final String jsonUrl;
+        private final String rawUrl;
+        private final Map<String, String> metaData;
+        private final Set<EventType> disabledTypes;
+
+        ConfigSnapshot(boolean valid, String jsonUrl, String rawUrl, Properties metaDataProperties) {
+            this.valid = valid;
+            this.jsonUrl = jsonUrl;
+            this.rawUrl = rawUrl;
+            Map<String, String> metaData = new HashMap<>();
+            for (String key : metaDataProperties.stringPropertyNames()) {
+                metaData.put(key, metaDataProperties.getProperty(key));
+            }
+            this.metaData = Collections.unmodifiableMap(metaData);
+            EnumSet<EventType> disabled = EnumSet.noneOf(EventType.class);
+            for (EventType eventType : EventType.values()) {
+                if (!valid || "false".equals(metaData.get(eventType.getKey("enabled")))) {
+                    disabled.add(eventType);
+                }
+            }
+            this.disabledTypes = disabled;
+        }
+    }
+
+    /**
+     * Rebuild the envelope once Jenkins url is saved, the metadata host falls back to it
+     */
+    @Extension
+    public static class LocationChangeListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof JenkinsLocationConfiguration) {
+                KhulnasoftJenkinsInstallation config = get();
+                if (config.envelope != null) {
+                    config.envelope = HecEnvelope.build(config);
+                }
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -35,7 +35,7 @@ public class LoggingInitStep {
                 return;
             }
         }
-        //only log warning message for HealthMonitor which runs every 20s
+        //only log warning message for HealthMonitor which runs every few seconds
         Logger.getLogger(HealthMonitor.class.getName()).setLevel(Level.WARNING);
         Logger.getLogger(rootLoggerName).addHandler(JdkKhulnasoftLogHandler.LogHolder.LOG_HANDLER);
         //init plugin
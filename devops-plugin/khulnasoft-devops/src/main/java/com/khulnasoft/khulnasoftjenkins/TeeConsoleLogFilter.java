@@ -13,10 +13,10 @@ import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,8 +28,8 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * work like unix tee, one end is khulnasoft http output, the other is console out
- * only need to tee the write(int b) method, leave write(byte b[], int off, int len)
- * and public void write(byte b[]) alone since they will call write(int b)
+ * both write(int b) and write(byte b[], int off, int len) are teed, the bulk write passes the whole
+ * buffer to console out and copies line segments at once, write(byte b[]) calls the bulk one
  * the filter apply order is determined by descent ordinal order
  * <p>
  * Some log filter's flush or close function is no-op, causes TeeConsoleLogFilter cache not flushed.
@@ -102,6 +102,10 @@ public class TeeConsoleLogFilter extends ConsoleLogFilter implements Serializabl
 
     public static class TeeOutputStream extends FilterOutputStream {
         private static final int LF = 0x0A;
+        private static final byte[] LINE_PREFIX = "line:".getBytes(UTF_8);
+        private static final byte[] SEPARATOR = "  ".getBytes(UTF_8);
+        // position of SSS in LOG_TIME_FORMAT yyyy-MM-dd'T'HH:mm:ss.SSSZ
+        private static final int MILLIS_OFFSET = 20;
         boolean requireLineNumber = true;
         String sourceName;
         long lineCounter = 0;
@@ -111,6 +115,12 @@ public class TeeConsoleLogFilter extends ConsoleLogFilter implements Serializabl
         //holds decoded text with timestamp and line number, will be cleared when job is finished or batch size is reached
         private ByteArrayOutputStream2 logText = new ByteArrayOutputStream2(Constants.MIN_BUFFER_SIZE);
         SimpleDateFormat sdf = new SimpleDateFormat(LOG_TIME_FORMAT, Locale.US);
+        // LOG_TIME_FORMAT followed by two spaces, and the second it was formatted for
+        private byte[] timestamp = new byte[0];
+        private long timestampSecond = Long.MIN_VALUE;
+        private int timestampMillis;
+        // scratch buffer for line number, long has 19 digits at most
+        private final byte[] digits = new byte[20];
         private long cacheSize = Constants.MIN_BUFFER_SIZE;
 
         public void setCacheSize(long cacheSize) {
@@ -151,16 +161,50 @@ public class TeeConsoleLogFilter extends ConsoleLogFilter implements Serializabl
             }
         }
 
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            out.write(b, off, len);
+            int end = off + len;
+            int start = off;
+            while (start < end) {
+                // same as write(int), a line is cut when it exceeds CONSOLE_TEXT_SINGLE_LINE_MAX_LENGTH
+                int limit = (int) Math.min(end, (long) start + CONSOLE_TEXT_SINGLE_LINE_MAX_LENGTH + 1 - branch.size());
+                int lineEnd = indexOf(b, LF, start, limit);
+                if (lineEnd < 0) {
+                    branch.write(b, start, limit - start);
+                    start = limit;
+                    if (branch.size() > CONSOLE_TEXT_SINGLE_LINE_MAX_LENGTH) {
+                        eol();
+                    }
+                } else {
+                    branch.write(b, start, lineEnd + 1 - start);
+                    start = lineEnd + 1;
+                    eol();
+                }
+            }
+        }
+
+        private static int indexOf(byte[] b, int value, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (b[i] == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
         private void eol() throws IOException {
             if (branch.size() == 0) {
                 return;
             }
             lineCounter++;
             //ISO 8601 datetime, and build url and line number
-            String prefix = sdf.format(new Date()) + "  ";
-            logText.write(prefix.getBytes(UTF_8));
+            writeTimestamp();
             if (requireLineNumber) {
-                logText.write(("line:" + lineCounter + "  ").getBytes(UTF_8));
+                logText.write(LINE_PREFIX, 0, LINE_PREFIX.length);
+                writeDigits(lineCounter);
+                logText.write(SEPARATOR, 0, SEPARATOR.length);
             }
             PlainTextConsoleUtils.decodeConsole(branch.getBuffer(), branch.size(), logText);
             if (logText.size() >= cacheSize) {
@@ -170,16 +214,42 @@ public class TeeConsoleLogFilter extends ConsoleLogFilter implements Serializabl
             branch.reset();
         }
 
+        /**
+         * The formatted time is cached and reformatted once per second, only the milliseconds digits
+         * are patched in between, so no garbage is created per line
+         */
+        private void writeTimestamp() {
+            long now = System.currentTimeMillis();
+            long second = Math.floorDiv(now, 1000);
+            int millis = (int) Math.floorMod(now, 1000);
+            if (second != timestampSecond || timestamp.length < MILLIS_OFFSET + 3) {
+                timestamp = (sdf.format(new Date(now)) + "  ").getBytes(UTF_8);
+                timestampSecond = second;
+                timestampMillis = millis;
+            } else if (millis != timestampMillis) {
+                timestamp[MILLIS_OFFSET] = (byte) ('0' + millis / 100);
+                timestamp[MILLIS_OFFSET + 1] = (byte) ('0' + millis / 10 % 10);
+                timestamp[MILLIS_OFFSET + 2] = (byte) ('0' + millis % 10);
+                timestampMillis = millis;
+            }
+            logText.write(timestamp, 0, timestamp.length);
+        }
+
+        private void writeDigits(long value) {
+            int pos = digits.length;
+            do {
+                digits[--pos] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            logText.write(digits, pos, digits.length - pos);
+        }
+
         private void flushLog() {
             if (logText.size() == 0) {
                 return;
             }
-            try {
-                String logs = logText.toString("UTF-8");
-                KhulnasoftLogService.getInstance().send(logs, CONSOLE_LOG, sourceName);
-            } catch (UnsupportedEncodingException e) {//this should not happen, since utf-8 is an known charset
-                e.printStackTrace();
-            }
+            // pass the utf-8 bytes through, they are posted to raw endpoint without decoding
+            KhulnasoftLogService.getInstance().send(logText.getBuffer(), logText.size(), CONSOLE_LOG, sourceName);
             logText.reset();
         }
     }
@@ -3,7 +3,7 @@ public class WebPostAccessLogger {
 }
 package com.khulnasoft.khulnasoftjenkins;
 
-import com.khulnasoft.khulnasoftjenkins.utils.KhulnasoftLogService;
+import com.khulnasoft.khulnasoftjenkins.utils.EventBuilder;
 import jenkins.model.Jenkins;
 import org.acegisecurity.Authentication;
 
@@ -15,8 +15,6 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
@@ -61,11 +59,12 @@ public class WebPostAccessLogger implements Filter {
         if (!FILTER_PATTERN.matcher(path).find()) {
             return;
         }
-        Map<String, String> auditInfo = new HashMap();
-        auditInfo.put("user", auth.getName());
-        auditInfo.put("message", "POST " + request.getRequestURI());
-        auditInfo.put(TAG, "audit_trail");
-        KhulnasoftLogService.getInstance().send(auditInfo, JENKINS_CONFIG, "web_access");
+        new EventBuilder(JENKINS_CONFIG)
+                .put("user", auth.getName())
+                .put("message", "POST " + path)
+                .put(TAG, "audit_trail")
+                .source("web_access")
+                .send();
     }
 
     @Override
@@ -5,6 +5,7 @@ import hudson.tasks.test.AbstractTestResultAction;
 import hudson.tasks.test.TestResult;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -20,28 +21,57 @@ public abstract class AbstractTestResultAdapter<T extends TestResult> {
      */
     public static List<TestResult> getTestResult(Run build, List<String> ignoredActions) {
         List<TestResult> results = new ArrayList<>();
+        for (List<? extends TestResult> source : getTestResultSources(build, ignoredActions)) {
+            results.addAll(source);
+        }
+        return results;
+    }
+
+    /**
+     * Get the test result lists held by the actions of a build, in the same order as {@link #getTestResult(Run, List)},
+     * without copying them into one list
+     * @param build the Jenkins build
+     * @param ignoredActions list of action class names to ignore
+     * @return lists of test results
+     */
+    public static List<List<? extends TestResult>> getTestResultSources(Run build, List<String> ignoredActions) {
+        List<List<? extends TestResult>> sources = new ArrayList<>();
 
         if (build == null) {
-            return results;
+            return sources;
         }
 
         // Check for TestNG results first
         if (ignoredActions == null || !ignoredActions.contains("hudson.plugins.testng.Publisher")) {
-            addTestNGResults(build, results);
+            addTestNGResults(build, sources);
         }
 
         // Check for JUnit results
+        AbstractTestResultAction<?> junitAction = null;
         if (ignoredActions == null || !ignoredActions.contains("hudson.tasks.junit.JUnitResultArchiver")) {
-            addJUnitResults(build, results);
+            junitAction = build.getAction(AbstractTestResultAction.class);
+            if (junitAction != null) {
+                addActionResults(junitAction, sources);
+            }
         }
 
         // Check for other test result actions
-        addOtherTestResults(build, results, ignoredActions);
+        addOtherTestResults(build, sources, ignoredActions, junitAction);
 
-        return results;
+        return sources;
     }
 
-    private static void addTestNGResults(Run build, List<TestResult> results) {
+    /**
+     * @param testAction the test result action
+     * @return failed, skipped and passed tests of the action
+     */
+    public static List<List<? extends TestResult>> getTestResultSources(AbstractTestResultAction<?> testAction) {
+        List<List<? extends TestResult>> sources = new ArrayList<>();
+        addActionResults(testAction, sources);
+        return sources;
+    }
+
+    private static void addTestNGResults(Run build, List<List<? extends TestResult>> sources) {
         try {
             // Try to get TestNG results
             Object testNGAction = build.getAction("hudson.plugins.testng.TestNGTestResultAction");
@@ -50,7 +80,7 @@ public abstract class AbstractTestResultAdapter<T extends TestResult> {
                 java.lang.reflect.Method getResult = testNGAction.getClass().getMethod("getResult");
                 Object result = getResult.invoke(testNGAction);
                 if (result instanceof TestResult) {
-                    results.add((TestResult) result);
+                    sources.add(Collections.singletonList((TestResult) result));
                 }
             }
         } catch (Exception e) {
@@ -58,18 +88,11 @@ public abstract class AbstractTestResultAdapter<T extends TestResult> {
         }
     }
 
-    private static void addJUnitResults(Run build, List<TestResult> results) {
-        AbstractTestResultAction<?> junitAction = build.getAction(AbstractTestResultAction.class);
-        if (junitAction != null) {
-            results.addAll(junitAction.getFailedTests());
-            results.addAll(junitAction.getSkippedTests());
-            results.addAll(junitAction.getPassedTests());
-        }
-    }
-
-    private static void addOtherTestResults(Run build, List<TestResult> results, List<String> ignoredActions) {
+    private static void addOtherTestResults(Run build, List<List<? extends TestResult>> sources, List<String> ignoredActions,
+                                            AbstractTestResultAction<?> junitAction) {
         for (Object action : build.getAllActions()) {
-            if (action instanceof AbstractTestResultAction) {
+            // the JUnit action had been added already
+            if (action instanceof AbstractTestResultAction && action != junitAction) {
                 AbstractTestResultAction<?> testAction = (AbstractTestResultAction<?>) action;
                 String actionClassName = action.getClass().getName();
 
@@ -79,11 +102,15 @@ public abstract class AbstractTestResultAdapter<T extends TestResult> {
 
                 if (!"hudson.tasks.junit.JUnitResultArchiver".equals(actionClassName) &&
                     !"hudson.plugins.testng.TestNGTestResultAction".equals(actionClassName)) {
-                    results.addAll(testAction.getFailedTests());
-                    results.addAll(testAction.getSkippedTests());
-                    results.addAll(testAction.getPassedTests());
+                    addActionResults(testAction, sources);
                 }
             }
         }
     }
+
+    private static void addActionResults(AbstractTestResultAction<?> testAction, List<List<? extends TestResult>> sources) {
+        sources.add(testAction.getFailedTests());
+        sources.add(testAction.getSkippedTests());
+        sources.add(testAction.getPassedTests());
+    }
 }
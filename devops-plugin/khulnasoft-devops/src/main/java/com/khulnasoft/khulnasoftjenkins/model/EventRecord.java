@@ -1,5 +1,6 @@
 package com.khulnasoft.khulnasoftjenkins.model;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 /**
@@ -7,7 +8,11 @@ import java.util.Map;
  */
 public class EventRecord {
     private final Map<String, Object> data;
+    private final byte[] rawData;
+    private final boolean encoded;
+    private final boolean json;
     private final EventType eventType;
+    private final long time = System.currentTimeMillis();
     private String source;
 
     /**
@@ -16,8 +21,7 @@ public class EventRecord {
      * @param eventType the type of event
      */
     public EventRecord(Map<String, Object> data, EventType eventType) {
-        this.data = data;
-        this.eventType = eventType;
+        this(data, null, false, false, eventType);
     }
 
     /**
@@ -26,18 +30,98 @@ public class EventRecord {
      * @param eventType the type of event
      */
     public EventRecord(String data, EventType eventType) {
-        this.data = Map.of("message", data);
+        this(Map.of("message", data), null, false, false, eventType);
+    }
+
+    /**
+     * Create an event record with utf-8 text, such as a chunk of console lines.
+     * The bytes are kept as is, so they can be posted to raw endpoint without decoding
+     * @param rawData the utf-8 encoded text, the array must not be modified afterwards
+     * @param eventType the type of event
+     */
+    public EventRecord(byte[] rawData, EventType eventType) {
+        this(null, rawData, false, false, eventType);
+    }
+
+    /**
+     * Create an event record whose data is provided by subclass
+     * @param eventType the type of event
+     */
+    protected EventRecord(EventType eventType) {
+        this(null, null, false, false, eventType);
+    }
+
+    private EventRecord(Map<String, Object> data, byte[] rawData, boolean encoded, boolean json, EventType eventType) {
+        this.data = data;
+        this.rawData = rawData;
+        this.encoded = encoded;
+        this.json = json;
         this.eventType = eventType;
     }
 
+    /**
+     * Create an event record from HEC json events which had been encoded with metadata, such as events replayed from disk
+     * @param json newline-delimited HEC json events
+     * @param eventType the type of event
+     * @return the event record
+     */
+    public static EventRecord encoded(byte[] json, EventType eventType) {
+        return new EventRecord(null, json, true, false, eventType);
+    }
+
+    /**
+     * Create an event record from the json object of the event field, the metadata envelope is added when it is sent
+     * @param json utf-8 json object, the array must not be modified afterwards
+     * @param eventType the type of event
+     * @return the event record
+     */
+    public static EventRecord json(byte[] json, EventType eventType) {
+        return new EventRecord(null, json, false, true, eventType);
+    }
+
     /**
      * Get the event data
      * @return the event data map
      */
     public Map<String, Object> getData() {
+        if (rawData != null) {
+            return Map.of("message", new String(rawData, StandardCharsets.UTF_8));
+        }
         return data;
     }
 
+    /**
+     * Get the utf-8 text of the event, or the json if the event is encoded or created from json
+     * @return the text bytes, or null if the event is not created from bytes
+     */
+    public byte[] getRawData() {
+        return rawData;
+    }
+
+    /**
+     * Check if the event holds utf-8 text bytes
+     * @return true if the event is created from bytes
+     */
+    public boolean isRaw() {
+        return rawData != null && !encoded && !json;
+    }
+
+    /**
+     * Check if the event holds the json object of the event field
+     * @return true if the event is created by {@link #json(byte[], EventType)}
+     */
+    public boolean isJson() {
+        return json;
+    }
+
+    /**
+     * Check if the event holds encoded HEC json
+     * @return true if the event is created by {@link #encoded(byte[], EventType)}
+     */
+    public boolean isEncoded() {
+        return encoded;
+    }
+
     /**
      * Get the event type
      * @return the event type
@@ -46,6 +130,14 @@ public class EventRecord {
         return eventType;
     }
 
+    /**
+     * Get the time this event was created, events are batched so the send time is not the event time
+     * @return epoch milliseconds
+     */
+    public long getTime() {
+        return time;
+    }
+
     /**
      * Get the source of this event
      * @return the source
@@ -67,7 +159,8 @@ public class EventRecord {
         return "EventRecord{" +
                 "eventType=" + eventType +
                 ", source='" + source + '\'' +
-                ", data=" + data +
+                (json ? ", json=" + new String(rawData, StandardCharsets.UTF_8)
+                        : rawData != null ? ", rawData=" + rawData.length + " bytes" : ", data=" + getData()) +
                 '}';
     }
 }
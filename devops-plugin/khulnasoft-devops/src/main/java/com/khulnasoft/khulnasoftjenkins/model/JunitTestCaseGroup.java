@@ -3,46 +3,249 @@ package com.khulnasoft.khulnasoftjenkins.model;
 import hudson.tasks.test.TestResult;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+
+import static com.khulnasoft.khulnasoftjenkins.Constants.MAX_JUNIT_STDIO_SIZE;
 
 /**
  * Represents a group of JUnit test cases for batch processing
+ * <p>
+ * Test cases are not kept as Jenkins objects, the fields which are reported are copied into columns,
+ * class names are shared within the group, and stdio and stack traces are truncated to
+ * {@link com.khulnasoft.khulnasoftjenkins.Constants#MAX_JUNIT_STDIO_SIZE} characters.
  */
 public class JunitTestCaseGroup {
-    private final List<TestResult> testCases = new ArrayList<>();
+    private static final int INITIAL_CAPACITY = 16;
+    private static final String[] STATUS_NAMES = {"SUCCESS", "FAILURE", "SKIPPED", "UNKNOWN"};
+    private static final byte SUCCESS = 0;
+    private static final byte FAILURE = 1;
+    private static final byte SKIPPED = 2;
+    private static final byte UNKNOWN = 3;
+
+    // false if the group only counts test cases
+    private final boolean keepTestCases;
+    private int total = 0;
     private int failures = 0;
     private int passes = 0;
     private int skips = 0;
     private long duration = 0;
+    // test case columns, the first total entries are used
+    private String[] names = new String[0];
+    private String[] classNames = new String[0];
+    private float[] durations = new float[0];
+    private byte[] statuses = new byte[0];
+    private String[] errorDetails = new String[0];
+    private String[] errorStackTraces = new String[0];
+    private String[] stdout = new String[0];
+    private String[] stderr = new String[0];
+    private Map<String, String> sharedClassNames;
+
+    public JunitTestCaseGroup() {
+        this(true);
+    }
+
+    private JunitTestCaseGroup(boolean keepTestCases) {
+        this.keepTestCases = keepTestCases;
+    }
+
+    /**
+     * Create a group which only counts the test cases added, used for summary of large test suites
+     * @return the group, its test case list is always empty
+     */
+    public static JunitTestCaseGroup countOnly() {
+        return new JunitTestCaseGroup(false);
+    }
 
     /**
      * Add a test case to this group
      * @param testCase the test case to add
      */
     public void add(TestResult testCase) {
-        testCases.add(testCase);
-
+        byte status;
         switch (testCase.getResult()) {
             case FAILURE:
                 failures++;
+                status = FAILURE;
                 break;
             case SUCCESS:
                 passes++;
+                status = SUCCESS;
                 break;
             case SKIPPED:
                 skips++;
+                status = SKIPPED;
                 break;
+            default:
+                status = UNKNOWN;
         }
 
         duration += testCase.getDuration();
+        if (keepTestCases) {
+            ensureCapacity(total + 1);
+            String name = testCase.getName();
+            names[total] = name;
+            classNames[total] = getClassName(testCase.getFullName(), name);
+            durations[total] = testCase.getDuration();
+            statuses[total] = status;
+            if (status != SUCCESS) {
+                errorDetails[total] = truncate(testCase.getErrorDetails());
+                errorStackTraces[total] = truncate(testCase.getErrorStackTrace());
+            }
+            stdout[total] = truncate(testCase.getStdout());
+            stderr[total] = truncate(testCase.getStderr());
+        }
+        total++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= names.length) {
+            return;
+        }
+        int newCapacity = Math.max(INITIAL_CAPACITY, Math.max(capacity, names.length * 2));
+        names = Arrays.copyOf(names, newCapacity);
+        classNames = Arrays.copyOf(classNames, newCapacity);
+        durations = Arrays.copyOf(durations, newCapacity);
+        statuses = Arrays.copyOf(statuses, newCapacity);
+        errorDetails = Arrays.copyOf(errorDetails, newCapacity);
+        errorStackTraces = Arrays.copyOf(errorStackTraces, newCapacity);
+        stdout = Arrays.copyOf(stdout, newCapacity);
+        stderr = Arrays.copyOf(stderr, newCapacity);
+    }
+
+    /**
+     * @param fullName full name of the test case, e.g. com.example.FooTest.testBar
+     * @param name     name of the test case, e.g. testBar
+     * @return the class name shared by test cases of the same class, or empty string if unknown
+     */
+    private String getClassName(String fullName, String name) {
+        if (fullName == null || name == null || fullName.length() <= name.length() + 1 || !fullName.endsWith(name)) {
+            return "";
+        }
+        String className = fullName.substring(0, fullName.length() - name.length() - 1);
+        if (sharedClassNames == null) {
+            sharedClassNames = new HashMap<>();
+        }
+        String shared = sharedClassNames.putIfAbsent(className, className);
+        return shared != null ? shared : className;
+    }
+
+    private static String truncate(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        return text.length() > MAX_JUNIT_STDIO_SIZE ? text.substring(0, MAX_JUNIT_STDIO_SIZE) : text;
+    }
+
+    /**
+     * Get all test cases in this group, the maps are built on each call,
+     * use the indexed getters to read the fields without copying
+     * @return list of test case fields
+     */
+    public List<Map<String, Object>> getTestCases() {
+        List<Map<String, Object>> testCases = new ArrayList<>(keepTestCases ? total : 0);
+        if (!keepTestCases) {
+            return testCases;
+        }
+        for (int i = 0; i < total; i++) {
+            Map<String, Object> testCase = new LinkedHashMap<>();
+            testCase.put("name", names[i]);
+            testCase.put("classname", classNames[i]);
+            testCase.put("duration", durations[i]);
+            testCase.put("status", getStatus(i));
+            putIfNotNull(testCase, "error_details", errorDetails[i]);
+            putIfNotNull(testCase, "error_stack_trace", errorStackTraces[i]);
+            putIfNotNull(testCase, "stdout", stdout[i]);
+            putIfNotNull(testCase, "stderr", stderr[i]);
+            testCases.add(testCase);
+        }
+        return testCases;
+    }
+
+    private static void putIfNotNull(Map<String, Object> map, String key, String value) {
+        if (value != null) {
+            map.put(key, value);
+        }
+    }
+
+    /**
+     * @return number of test cases held, 0 if the group only counts test cases
+     */
+    public int size() {
+        return keepTestCases ? total : 0;
+    }
+
+    public String getName(int index) {
+        checkIndex(index);
+        return names[index];
+    }
+
+    public String getClassName(int index) {
+        checkIndex(index);
+        return classNames[index];
+    }
+
+    /**
+     * @param index test case index
+     * @return duration in seconds
+     */
+    public float getDuration(int index) {
+        checkIndex(index);
+        return durations[index];
+    }
+
+    /**
+     * @param index test case index
+     * @return SUCCESS, FAILURE, SKIPPED or UNKNOWN
+     */
+    public String getStatus(int index) {
+        checkIndex(index);
+        return STATUS_NAMES[statuses[index]];
+    }
+
+    /**
+     * @param index test case index
+     * @return error details of failed or skipped test case, or null
+     */
+    public String getErrorDetails(int index) {
+        checkIndex(index);
+        return errorDetails[index];
+    }
+
+    /**
+     * @param index test case index
+     * @return truncated stack trace of failed or skipped test case, or null
+     */
+    public String getErrorStackTrace(int index) {
+        checkIndex(index);
+        return errorStackTraces[index];
+    }
+
+    /**
+     * @param index test case index
+     * @return truncated stdout, or null
+     */
+    public String getStdout(int index) {
+        checkIndex(index);
+        return stdout[index];
     }
 
     /**
-     * Get all test cases in this group
-     * @return list of test cases
+     * @param index test case index
+     * @return truncated stderr, or null
      */
-    public List<TestResult> getTestCases() {
-        return new ArrayList<>(testCases);
+    public String getStderr(int index) {
+        checkIndex(index);
+        return stderr[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size());
+        }
     }
 
     /**
@@ -50,7 +253,7 @@ public class JunitTestCaseGroup {
      * @return total count
      */
     public int getTotal() {
-        return testCases.size();
+        return total;
     }
 
     /**
@@ -90,7 +293,7 @@ public class JunitTestCaseGroup {
      * @return true if no test cases
      */
     public boolean isEmpty() {
-        return testCases.isEmpty();
+        return total == 0;
     }
 
     @Override
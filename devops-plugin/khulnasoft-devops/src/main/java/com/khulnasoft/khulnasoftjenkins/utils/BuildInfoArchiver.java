@@ -1,31 +1,67 @@
 package com.khulnasoft.khulnasoftjenkins.utils;
 
 import com.google.common.base.Predicate;
+import com.khulnasoft.khulnasoftjenkins.Constants;
 import com.khulnasoft.khulnasoftjenkins.KhulnasoftJenkinsInstallation;
 import com.khulnasoft.khulnasoftjenkins.TeeConsoleLogFilter;
 import com.khulnasoft.khulnasoftjenkins.listeners.LoggingRunListener;
 import hudson.model.*;
 import hudson.model.listeners.RunListener;
-import hudson.util.IOUtils;
+import hudson.Util;
 import hudson.util.NullStream;
-import hudson.util.RunList;
 import jenkins.model.Jenkins;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Properties;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import static com.khulnasoft.khulnasoftjenkins.Constants.REPLAY_DIR_NAME;
+import static com.khulnasoft.khulnasoftjenkins.Constants.REPLAY_EVENTS_PER_SECOND;
+import static com.khulnasoft.khulnasoftjenkins.Constants.REPLAY_THREADS;
 import static com.khulnasoft.khulnasoftjenkins.model.EventType.CONSOLE_LOG;
 
+/**
+ * Resend existing builds and their console logs.
+ * <p>
+ * Jobs are replayed in parallel on {@link Constants#REPLAY_THREADS} threads, builds of one job oldest first,
+ * throttled to {@link Constants#REPLAY_EVENTS_PER_SECOND} build and console line events.
+ * Plain text logs are read through a {@link FileChannel} in large blocks of complete lines and sent in batch sized chunks.
+ * For time and build number windows, the last replayed build number of each job is saved in a checkpoint file
+ * under JENKINS_HOME/khulnasoft-replay, so an interrupted replay resumes where it stopped when run again with the same window.
+ * The checkpoint is deleted once the replay completed.
+ */
 public class BuildInfoArchiver {
-    Set<String> processedJob = Collections.newSetFromMap(
-            new WeakHashMap<String, Boolean>());
-    LoggingRunListener runListener = RunListener.all().get(LoggingRunListener.class);
+    private static final Logger LOG = Logger.getLogger(BuildInfoArchiver.class.getName());
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final int READ_BUFFER_SIZE = 1 << 20;
 
+    Set<String> processedJob = ConcurrentHashMap.newKeySet();
+    LoggingRunListener runListener = RunListener.all().get(LoggingRunListener.class);
+    private final Throttle throttle = new Throttle(REPLAY_EVENTS_PER_SECOND);
 
     /**
      * Send existing build
@@ -35,13 +71,11 @@ public class BuildInfoArchiver {
      * @return total number of builds whose result or log was resent
      */
     public int run(long startTime, long endTime) {
-        List<TopLevelItem> topItems = Jenkins.getInstance().getItems();
-        Predicate<Run> predicate = new BuildTimePredict(startTime, endTime);
-        int count = 0;
-        for (TopLevelItem topLevelItem : topItems) {
-            count += run(topLevelItem, predicate);
+        List<Project> projects = new ArrayList<>();
+        for (TopLevelItem topLevelItem : Jenkins.getInstance().getItems()) {
+            collectProjects(topLevelItem, projects);
         }
-        return count;
+        return replay("", projects, new BuildTimePredict(startTime, endTime));
     }
 
     /**
@@ -80,8 +114,12 @@ public class BuildInfoArchiver {
         boolean sent = false;
         if (item != null && item instanceof Project) {
             Run run = ((Project) item).getBuildByNumber(number);
-            sendBuild(run);
-            sent = true;
+            try {
+                sendBuild(run);
+                sent = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
         return sent;
     }
@@ -124,53 +162,212 @@ public class BuildInfoArchiver {
         if (item == null) {
             return 0;
         }
-        int count = 0;
+        List<Project> projects = new ArrayList<>();
+        collectProjects(item, projects);
+        return replay(item.getFullName(), projects, predicate);
+    }
+
+    private void collectProjects(Item item, List<Project> projects) {
         if (item instanceof ItemGroup) {
             ItemGroup group = (ItemGroup) item;
             for (Object subItem : group.getItems()) {
                 if (subItem instanceof Item) {
-                    count = count + run((Item) subItem, predicate);
+                    collectProjects((Item) subItem, projects);
                 }
             }
         } else if (item instanceof Project) {
-            Project project = (Project) item;
-            RunList<Run> runList = project.getBuilds();
-            for (Run run : runList) {
-                if (processedJob.contains(run.getUrl())) {
-                    continue;
-                }
-                //check whether the build is in the time range
-                if (predicate.apply(run)) {
+            projects.add((Project) item);
+        }
+    }
+
+    /**
+     * Replay the jobs in parallel and wait for completion
+     *
+     * @param scope     full name of the item the jobs were collected from, part of the checkpoint name
+     * @param projects  the jobs
+     * @param predicate function to check whether build apply
+     * @return total number of builds whose result or log was resent
+     */
+    private int replay(String scope, List<Project> projects, Predicate<Run> predicate) {
+        if (projects.isEmpty()) {
+            return 0;
+        }
+        Checkpoint checkpoint = Checkpoint.open(scope, predicate);
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(REPLAY_THREADS, projects.size()), runnable -> {
+            Thread thread = new Thread(runnable, "khulnasoft-replay-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        boolean completed = false;
+        try {
+            List<Future<?>> futures = new ArrayList<>(projects.size());
+            for (Project project : projects) {
+                futures.add(executor.submit(() -> {
+                    replayJob(project, predicate, checkpoint, count);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            completed = true;
+        } catch (InterruptedException e) {
+            LOG.log(Level.INFO, "replay interrupted after {0} builds, run again to resume", count.get());
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.log(Level.WARNING, "failed to replay builds", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            // keep the checkpoint if the replayed events could not be confirmed, the next run resends them
+            if (checkpoint.save() && completed) {
+                checkpoint.delete();
+            }
+        }
+        return count.get();
+    }
+
+    private void replayJob(Project project, Predicate<Run> predicate, Checkpoint checkpoint, AtomicInteger count)
+            throws InterruptedException {
+        String jobName = project.getFullName();
+        int lastBuild = checkpoint.getLastBuild(jobName);
+        List<Run> runs = new ArrayList<Run>(project.getBuilds());
+        //builds are listed newest first, replay oldest first so the checkpoint is the highest number done
+        Collections.reverse(runs);
+        //the checkpoint stops before the first build which is not completed or failed to replay
+        boolean advance = true;
+        for (Run run : runs) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (run.getNumber() <= lastBuild || processedJob.contains(run.getUrl())) {
+                continue;
+            }
+            if (run.isBuilding() || run.getResult() == null) {
+                advance = false;
+                continue;
+            }
+            //check whether the build is in the time range
+            if (predicate.apply(run)) {
+                try {
                     sendBuild(run);
                     processedJob.add(run.getUrl());
-                    count++;
+                    count.incrementAndGet();
+                } catch (RuntimeException e) {
+                    LOG.log(Level.WARNING, "failed to replay build " + run.getUrl(), e);
+                    advance = false;
                 }
             }
+            if (advance) {
+                checkpoint.update(jobName, run.getNumber());
+            }
         }
-        return count;
     }
 
-    private void sendBuild(Run run) {
+    private void sendBuild(Run run) throws InterruptedException {
         if (run == null || run.isBuilding() || run.getResult() == null) {
             return;
         }
-        runListener.onCompleted(run, TaskListener.NULL);
+        throttle.acquire(1);
+        //not onCompleted, which queues the event on the post-build executor and returns before it is sent
+        runListener.sendCompleted(run);
         if (KhulnasoftJenkinsInstallation.get().isEventDisabled(CONSOLE_LOG)) {
             return;
         }
         //resend console logs, but with current timestamp
-        try (InputStream input = run.getLogInputStream()) {
-            TeeConsoleLogFilter.TeeOutputStream outputStream =
-                    new TeeConsoleLogFilter.TeeOutputStream(new NullStream(),run.getUrl() + "console");
-            IOUtils.copy(input, outputStream);
+        try (TeeConsoleLogFilter.TeeOutputStream outputStream =
+                     new TeeConsoleLogFilter.TeeOutputStream(new NullStream(), run.getUrl() + "console")) {
+            //send chunks as large as a batch, instead of the small cache used for running builds
+            outputStream.setCacheSize(KhulnasoftJenkinsInstallation.get().getMaxEventsBatchSize());
+            File logFile = run.getLogFile();
+            if (logFile.isFile() && !logFile.getName().endsWith(".gz")) {
+                replayLogFile(logFile.toPath(), outputStream);
+            } else {
+                //compressed or missing log
+                try (InputStream input = run.getLogInputStream()) {
+                    byte[] buffer = new byte[READ_BUFFER_SIZE];
+                    int length;
+                    while ((length = input.read(buffer)) >= 0) {
+                        throttle.acquire(countLines(buffer, length));
+                        outputStream.write(buffer, 0, length);
+                    }
+                }
+            }
             outputStream.flush();
-            outputStream.close();
         } catch (IOException e) {
             //just ignore
         }
     }
 
-    public static class BuildTimePredict implements Predicate<Run> {
+    /**
+     * Read the log file in large blocks and pass complete lines to the output, a partial line at the end of a block
+     * is moved to the front of the buffer and completed by the next read
+     *
+     * @param logFile the plain text log file
+     * @param output  the console output
+     * @throws IOException          if the file can not be read
+     * @throws InterruptedException if interrupted while throttled
+     */
+    private void replayLogFile(Path logFile, OutputStream output) throws IOException, InterruptedException {
+        //heap buffer, a direct one would be copied again into an array for the line scan and output.write
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        byte[] array = buffer.array();
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(buffer) < 0;
+                int length = buffer.position();
+                int chunkEnd = length;
+                if (!eof) {
+                    int lineEnd = lastIndexOf(array, '\n', length);
+                    if (lineEnd >= 0) {
+                        chunkEnd = lineEnd + 1;
+                    } else if (buffer.hasRemaining()) {
+                        //no complete line yet, read more
+                        chunkEnd = 0;
+                    }
+                    //else a line longer than the buffer is passed in pieces, the output cuts it anyway
+                }
+                if (chunkEnd > 0) {
+                    throttle.acquire(countLines(array, chunkEnd));
+                    output.write(array, 0, chunkEnd);
+                }
+                buffer.limit(length).position(chunkEnd);
+                buffer.compact();
+            }
+        }
+    }
+
+    private static int lastIndexOf(byte[] buffer, int value, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int countLines(byte[] buffer, int length) {
+        int lines = 0;
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Predicate which identifies a replay window, used to name the checkpoint
+     */
+    public interface Resumable {
+        /**
+         * @return a key which is the same for the same window
+         */
+        String getCheckpointKey();
+    }
+
+    public static class BuildTimePredict implements Predicate<Run>, Resumable {
         long startTime, endTime;
 
         public BuildTimePredict(long startTime, long endTime) {
@@ -187,9 +384,14 @@ public class BuildInfoArchiver {
             }
             return false;
         }
+
+        @Override
+        public String getCheckpointKey() {
+            return "time:" + startTime + "-" + endTime;
+        }
     }
 
-    public static class BuildIdPredict implements Predicate<Run> {
+    public static class BuildIdPredict implements Predicate<Run>, Resumable {
         int startId, endId;
 
         public BuildIdPredict(int startId, int endId) {
@@ -205,5 +407,144 @@ public class BuildInfoArchiver {
             }
             return false;
         }
+
+        @Override
+        public String getCheckpointKey() {
+            return "build:" + startId + "-" + endId;
+        }
+    }
+
+    /**
+     * Last replayed build number by job full name, saved to disk every few seconds.
+     * A build is saved once its events were posted or spilled to disk, so a restart does not skip builds
+     * whose events were still queued in memory
+     */
+    static class Checkpoint {
+        private static final long SAVE_INTERVAL_MILLIS = 5000;
+        private static final long SEND_TIMEOUT_MILLIS = 60000;
+
+        // null if the replay can not be resumed
+        private final File file;
+        // builds whose events are confirmed
+        private final Properties progress = new Properties();
+        // builds whose events are queued
+        private final Properties replayed = new Properties();
+        private volatile long lastSaveTime = System.currentTimeMillis();
+
+        private Checkpoint(File file) {
+            this.file = file;
+        }
+
+        /**
+         * @param scope     full name of the item the jobs were collected from
+         * @param predicate the replay window
+         * @return checkpoint loaded from disk, or an in-memory one if the predicate is not {@link Resumable}
+         */
+        static Checkpoint open(String scope, Predicate<Run> predicate) {
+            if (!(predicate instanceof Resumable)) {
+                return new Checkpoint(null);
+            }
+            String name = Util.getDigestOf(scope + " " + ((Resumable) predicate).getCheckpointKey());
+            File dir = new File(Jenkins.getInstance().getRootDir(), REPLAY_DIR_NAME);
+            Checkpoint checkpoint = new Checkpoint(new File(dir, name + ".properties"));
+            if (checkpoint.file.isFile()) {
+                try (InputStream input = new FileInputStream(checkpoint.file)) {
+                    checkpoint.progress.load(input);
+                    LOG.log(Level.INFO, "resume replay of {0} jobs from {1}", new Object[]{checkpoint.progress.size(), checkpoint.file});
+                } catch (IOException e) {
+                    LOG.log(Level.WARNING, "failed to load replay checkpoint " + checkpoint.file, e);
+                }
+            }
+            return checkpoint;
+        }
+
+        int getLastBuild(String jobName) {
+            String number = progress.getProperty(jobName);
+            return number == null ? 0 : Integer.parseInt(number);
+        }
+
+        void update(String jobName, int buildNumber) {
+            replayed.setProperty(jobName, Integer.toString(buildNumber));
+            if (System.currentTimeMillis() - lastSaveTime >= SAVE_INTERVAL_MILLIS) {
+                save();
+            }
+        }
+
+        /**
+         * Wait for the events of replayed builds to be posted or spilled, then save their build numbers
+         *
+         * @return true if all replayed builds were saved
+         */
+        synchronized boolean save() {
+            lastSaveTime = System.currentTimeMillis();
+            if (file == null) {
+                return true;
+            }
+            Properties confirmed = new Properties();
+            confirmed.putAll(replayed);
+            KhulnasoftLogService service = KhulnasoftLogService.getInstance();
+            boolean sent;
+            try {
+                sent = service.awaitSent(service.markQueued(), SEND_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                sent = false;
+            }
+            if (sent) {
+                progress.putAll(confirmed);
+            } else {
+                LOG.log(Level.WARNING, "replayed events were not sent in time or dropped, keep checkpoint {0}", file);
+            }
+            if (progress.isEmpty()) {
+                return sent;
+            }
+            File tmpFile = new File(file.getPath() + ".tmp");
+            try {
+                Files.createDirectories(file.getParentFile().toPath());
+                try (OutputStream output = new FileOutputStream(tmpFile)) {
+                    progress.store(output, "last replayed build number by job");
+                }
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "failed to save replay checkpoint " + file, e);
+            }
+            return sent;
+        }
+
+        synchronized void delete() {
+            if (file != null && file.exists() && !file.delete()) {
+                LOG.log(Level.WARNING, "failed to delete replay checkpoint {0}", file);
+            }
+        }
+    }
+
+    /**
+     * Spread permits evenly, unused budget is kept for one second at most
+     */
+    static class Throttle {
+        private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+        // 0 if unlimited
+        private final long intervalNanos;
+        private long nextFreeTime = System.nanoTime();
+
+        Throttle(int permitsPerSecond) {
+            this.intervalNanos = permitsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / permitsPerSecond : 0;
+        }
+
+        void acquire(int permits) throws InterruptedException {
+            if (intervalNanos == 0 || permits <= 0) {
+                return;
+            }
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                nextFreeTime = Math.max(nextFreeTime, now - BURST_NANOS);
+                wait = nextFreeTime - now;
+                nextFreeTime += permits * intervalNanos;
+            }
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,87 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stop posting to HEC after consecutive failures, so an unhealthy collector is not hammered by retries.
+ * <p>
+ * The circuit opens after {@code failureThreshold} consecutive failed requests. While open, requests are refused
+ * and the caller spills its events. Once {@code openMillis} elapsed, one probe request is let through,
+ * the circuit closes if it succeeds, or stays open for another period otherwise.
+ */
+public class CircuitBreaker {
+    private static final Logger LOG = Logger.getLogger(CircuitBreaker.class.getName());
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile long openUntil;
+
+    /**
+     * @param failureThreshold consecutive failures to open the circuit
+     * @param openMillis       how long the circuit stays open before a probe request
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * @return true if a request can be sent now, the caller must report the outcome with
+     * {@link #onSuccess()} or {@link #onFailure()}
+     */
+    public boolean allowRequest() {
+        switch (state.get()) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                // only one caller gets the probe
+                return System.currentTimeMillis() >= openUntil && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true if the circuit is closed or due for a probe, used to decide whether to replay spilled events
+     */
+    public boolean isAvailable() {
+        State current = state.get();
+        return current == State.CLOSED || (current == State.OPEN && System.currentTimeMillis() >= openUntil);
+    }
+
+    /**
+     * Record a request accepted by HEC
+     */
+    public void onSuccess() {
+        failures.set(0);
+        if (state.getAndSet(State.CLOSED) != State.CLOSED) {
+            LOG.log(Level.INFO, "HEC is reachable again, resume posting");
+        }
+    }
+
+    /**
+     * Record a failed request
+     */
+    public void onFailure() {
+        if (state.get() == State.HALF_OPEN || failures.incrementAndGet() >= failureThreshold) {
+            openUntil = System.currentTimeMillis() + openMillis;
+            if (state.getAndSet(State.OPEN) == State.CLOSED) {
+                LOG.log(Level.WARNING, "HEC failed {0} times in a row, pause posting for {1} ms",
+                        new Object[]{failures.get(), openMillis});
+            }
+        }
+    }
+
+    State getState() {
+        return state.get();
+    }
+}
@@ -0,0 +1,199 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import com.khulnasoft.khulnasoftjenkins.KhulnasoftJenkinsInstallation;
+import com.khulnasoft.khulnasoftjenkins.model.EventRecord;
+import com.khulnasoft.khulnasoftjenkins.model.EventType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.khulnasoft.khulnasoftjenkins.Constants.MIN_BUFFER_SIZE;
+
+/**
+ * Holds encoded events which will be posted in one http request, events are separated by new line.
+ * The buffer is reused after {@link #reset()}
+ * <p>
+ * A raw batch holds text chunks of the same event type and source, the chunks are written as is
+ * and the metadata is passed in query parameters, see {@link KhulnasoftJenkinsInstallation#canPostRaw(EventType)}
+ */
+public class EventBatch {
+    private final Buffer buffer;
+    private final List<byte[]> chunks;
+    private final EventType eventType;
+    private final String source;
+    private int count;
+    private int rawSize;
+
+    /**
+     * Create a batch for HEC json events
+     */
+    public EventBatch() {
+        this.buffer = new Buffer(MIN_BUFFER_SIZE);
+        this.chunks = null;
+        this.eventType = null;
+        this.source = null;
+    }
+
+    /**
+     * Create a batch for raw text
+     *
+     * @param eventType the event type of all chunks
+     * @param source    the source of all chunks
+     */
+    public EventBatch(EventType eventType, String source) {
+        this.buffer = null;
+        this.chunks = new ArrayList<>();
+        this.eventType = eventType;
+        this.source = source;
+    }
+
+    /**
+     * Encode the record and append to the batch
+     *
+     * @param record the event record
+     * @param config the plugin config which holds metadata
+     * @throws IOException if encoding failed
+     */
+    public void add(EventRecord record, KhulnasoftJenkinsInstallation config) throws IOException {
+        if (isRaw()) {
+            // the text is not copied, EventRecord holds its own array
+            chunks.add(record.getRawData());
+            rawSize += record.getRawData().length;
+            count++;
+            return;
+        }
+        int mark = buffer.size();
+        try {
+            if (count > 0) {
+                buffer.write('\n');
+            }
+            if (record.isEncoded()) {
+                buffer.write(record.getRawData(), 0, record.getRawData().length);
+            } else {
+                HecEventEncoder.encode(record, config, buffer);
+            }
+            count++;
+        } catch (IOException | RuntimeException e) {
+            // drop the partially encoded event so the batch stays well-formed
+            buffer.truncate(mark);
+            throw e;
+        }
+    }
+
+    /**
+     * Remove the last added event, used to keep the batch within the size limit
+     *
+     * @param previousSize the size of the batch before the event was added
+     */
+    public void removeLast(int previousSize) {
+        if (count == 0) {
+            return;
+        }
+        if (isRaw()) {
+            chunks.remove(chunks.size() - 1);
+            rawSize = previousSize;
+        } else {
+            // the new line separator goes with the event
+            buffer.truncate(previousSize);
+        }
+        count--;
+    }
+
+    /**
+     * @return total bytes of encoded events
+     */
+    public int size() {
+        return isRaw() ? rawSize : buffer.size();
+    }
+
+    /**
+     * @return number of events in the batch
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return true if the batch holds raw text
+     */
+    public boolean isRaw() {
+        return chunks != null;
+    }
+
+    public EventType getEventType() {
+        return eventType;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Write the payload to output
+     *
+     * @param out the output stream
+     * @throws IOException if write failed
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        if (isRaw()) {
+            for (byte[] chunk : chunks) {
+                out.write(chunk);
+            }
+        } else {
+            out.write(buffer.getBuffer(), 0, buffer.size());
+        }
+    }
+
+    public void reset() {
+        if (isRaw()) {
+            chunks.clear();
+            rawSize = 0;
+        } else {
+            buffer.reset();
+        }
+        count = 0;
+    }
+
+    /**
+     * The batch is only accessed by one sender thread, skip the synchronization of ByteArrayOutputStream
+     * since the encoder writes byte by byte. Also used by {@link EventBuilder} which is confined to one thread
+     */
+    static class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        @Override
+        public void write(int b) {
+            if (count == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length << 1);
+            }
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (count + len > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + len));
+            }
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+
+        void truncate(int size) {
+            count = size;
+        }
+    }
+}
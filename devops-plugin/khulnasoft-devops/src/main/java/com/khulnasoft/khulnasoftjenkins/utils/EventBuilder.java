@@ -0,0 +1,244 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import com.khulnasoft.khulnasoftjenkins.model.EventRecord;
+import com.khulnasoft.khulnasoftjenkins.model.EventType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Typed builder which writes event fields straight into json bytes, instead of building a map per event, e.g.
+ * <pre>
+ * new EventBuilder(QUEUE_INFO).put("queue_id", item.getId()).put("stuck", item.isStuck()).send();
+ * </pre>
+ * The json is written into a per-thread buffer which is reused by the next builder on the same thread,
+ * only the finished event is copied out. A builder must be used by one thread, and either sent or built once.
+ * The buffer is taken out of the pool while a builder uses it, a builder abandoned before build only costs
+ * its buffer, the next builder allocates a new one which goes back to the pool.
+ * <p>
+ * Putting a key again replaces the earlier value, as a map would.
+ */
+public class EventBuilder {
+    private static final int INITIAL_BUFFER_SIZE = 512;
+    private static final int MAX_POOLED_BUFFER_SIZE = 1 << 16;
+    private static final ThreadLocal<PooledBuffer> POOL = ThreadLocal.withInitial(PooledBuffer::new);
+    private static final int INITIAL_FIELDS = 16;
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+
+    private final EventType eventType;
+    private EventBatch.Buffer buffer;
+    private String source;
+    // keys written so far and where each field starts, the separator before the key included
+    private String[] keys = new String[INITIAL_FIELDS];
+    private int[] fieldStarts = new int[INITIAL_FIELDS];
+    private int fieldCount;
+
+    /**
+     * @param eventType the event type
+     */
+    public EventBuilder(EventType eventType) {
+        this.eventType = eventType;
+        // empty if a nested builder on the same thread holds it, or an abandoned builder took it
+        buffer = POOL.get().take();
+        buffer.write('{');
+    }
+
+    /**
+     * @param source the source name, the default source of the event type is used if not set
+     * @return this builder
+     */
+    public EventBuilder source(String source) {
+        this.source = source;
+        return this;
+    }
+
+    public EventBuilder put(String key, String value) {
+        try {
+            writeKey(key);
+            if (value == null) {
+                HecEventEncoder.writeValue(null, buffer);
+            } else {
+                HecEventEncoder.writeString(value, buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    public EventBuilder put(String key, long value) {
+        try {
+            writeKey(key);
+            HecEventEncoder.writeLong(value, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    public EventBuilder put(String key, float value) {
+        try {
+            writeKey(key);
+            HecEventEncoder.writeFloat(value, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    public EventBuilder put(String key, double value) {
+        try {
+            writeKey(key);
+            HecEventEncoder.writeDouble(value, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    public EventBuilder put(String key, boolean value) {
+        writeKey(key);
+        byte[] literal = value ? TRUE : FALSE;
+        buffer.write(literal, 0, literal.length);
+        return this;
+    }
+
+    /**
+     * Put any value, maps and collections are written as nested json
+     *
+     * @param key   the field name
+     * @param value the value
+     * @return this builder
+     */
+    public EventBuilder putValue(String key, Object value) {
+        try {
+            writeKey(key);
+            HecEventEncoder.writeValue(value, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Put all entries of the map
+     *
+     * @param fields the fields
+     * @return this builder
+     */
+    public EventBuilder putAll(Map<String, ?> fields) {
+        for (Map.Entry<String, ?> entry : fields.entrySet()) {
+            putValue(entry.getKey(), entry.getValue());
+        }
+        return this;
+    }
+
+    private void writeKey(String key) {
+        if (buffer == null) {
+            throw new IllegalStateException("event had been built");
+        }
+        for (int i = 0; i < fieldCount; i++) {
+            if (keys[i].equals(key)) {
+                removeField(i);
+                break;
+            }
+        }
+        if (fieldCount == keys.length) {
+            keys = Arrays.copyOf(keys, fieldCount * 2);
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+        }
+        keys[fieldCount] = key;
+        fieldStarts[fieldCount] = buffer.size();
+        if (fieldCount > 0) {
+            buffer.write(',');
+        }
+        fieldCount++;
+        try {
+            HecEventEncoder.writeString(key, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.write(':');
+    }
+
+    /**
+     * Cut the field out of the buffer, the first remaining field loses its separator
+     */
+    private void removeField(int index) {
+        int start = fieldStarts[index];
+        int end;
+        if (index + 1 < fieldCount) {
+            end = fieldStarts[index + 1];
+            if (index == 0) {
+                // the next field becomes the first one
+                end++;
+            }
+        } else {
+            end = buffer.size();
+        }
+        byte[] bytes = buffer.getBuffer();
+        System.arraycopy(bytes, end, bytes, start, buffer.size() - end);
+        buffer.truncate(buffer.size() - (end - start));
+        for (int i = index + 1; i < fieldCount; i++) {
+            keys[i - 1] = keys[i];
+            fieldStarts[i - 1] = fieldStarts[i] - (end - start);
+        }
+        if (index == 0 && fieldCount > 1) {
+            // the separator was removed above, the field now starts where the removed one did
+            fieldStarts[0] = start;
+        }
+        fieldCount--;
+    }
+
+    /**
+     * Finish the json object and copy it into the event record, the buffer goes back to the pool
+     *
+     * @return the event record
+     */
+    public EventRecord build() {
+        if (buffer == null) {
+            throw new IllegalStateException("event had been built");
+        }
+        buffer.write('}');
+        EventRecord record = EventRecord.json(Arrays.copyOf(buffer.getBuffer(), buffer.size()), eventType);
+        if (source != null) {
+            record.setSource(source);
+        }
+        POOL.get().release(buffer);
+        buffer = null;
+        return record;
+    }
+
+    /**
+     * Build the event and send it
+     *
+     * @return true if queued successfully
+     */
+    public boolean send() {
+        return KhulnasoftLogService.getInstance().send(build());
+    }
+
+    private static class PooledBuffer {
+        private EventBatch.Buffer buffer = new EventBatch.Buffer(INITIAL_BUFFER_SIZE);
+
+        EventBatch.Buffer take() {
+            EventBatch.Buffer taken = buffer;
+            buffer = null;
+            if (taken == null) {
+                return new EventBatch.Buffer(INITIAL_BUFFER_SIZE);
+            }
+            taken.reset();
+            return taken;
+        }
+
+        void release(EventBatch.Buffer released) {
+            // do not keep buffers grown by an unusually large event
+            if (buffer == null && released.getBuffer().length <= MAX_POOLED_BUFFER_SIZE) {
+                buffer = released;
+            }
+        }
+    }
+}
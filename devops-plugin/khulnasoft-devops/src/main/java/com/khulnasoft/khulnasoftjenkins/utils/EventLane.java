@@ -0,0 +1,662 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import com.khulnasoft.khulnasoftjenkins.Constants;
+import com.khulnasoft.khulnasoftjenkins.KhulnasoftJenkinsInstallation;
+import com.khulnasoft.khulnasoftjenkins.model.EventRecord;
+import com.khulnasoft.khulnasoftjenkins.model.EventType;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.khulnasoft.khulnasoftjenkins.Constants.BATCH_LINGER_MILLIS;
+import static com.khulnasoft.khulnasoftjenkins.Constants.MAX_BATCH_SIZE;
+import static com.khulnasoft.khulnasoftjenkins.Constants.RETRY_BACKOFF_MILLIS;
+import static com.khulnasoft.khulnasoftjenkins.Constants.RETRY_MAX_BACKOFF_MILLIS;
+import static com.khulnasoft.khulnasoftjenkins.Constants.SPILL_DIR_NAME;
+import static com.khulnasoft.khulnasoftjenkins.Constants.SPILL_ENABLED;
+import static com.khulnasoft.khulnasoftjenkins.Constants.SPILL_MAX_SEGMENTS;
+import static com.khulnasoft.khulnasoftjenkins.Constants.SPILL_SEGMENT_SIZE;
+
+/**
+ * Bounded queue and sender threads for one {@link EventType}, so bulk console text does not delay
+ * small events such as audit trail and queue samples.
+ * <p>
+ * Worker count, queue capacity and thread priority can be tuned with system properties
+ * khulnasoftins.lane.&lt;event type key&gt;.workers, .capacity and .priority,
+ * e.g. -Dkhulnasoftins.lane.console.workers=4
+ * <p>
+ * Each worker owns a slice of the lane capacity, events are routed to a worker by source
+ * so lines from the same build are posted in order. Events which do not fit in a queue, and the later ones of that
+ * queue, are handed to its worker, which appends them to the lane journal behind the queued ones, so producers never
+ * write to disk. The journal is replayed by the first worker, a replayed batch which failed is read again
+ * rather than appended behind newer events.
+ * While the journal has a backlog, new events are appended behind it and queued events are moved to it, so events
+ * are posted in the order they were offered. Only when the journal is full, events skip it and may be posted earlier
+ * than older spilled ones.
+ * <p>
+ * Stopping the lane spills the batches in flight and the queued events to the journal, they are replayed once
+ * the lane is started again, also after restart. Without a journal, e.g. on agent, queued events stay in memory.
+ */
+class EventLane {
+    private static final Logger LOG = Logger.getLogger(EventLane.class.getName());
+    private static final String PROPERTY_PREFIX = "khulnasoftins.lane.";
+    private static final ThreadLocal<Boolean> WORKER_THREAD = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    // how long stop waits for a worker to spill its batch, a worker blocked in a post spills or sends it later
+    private static final long STOP_WAIT_MILLIS = 5000;
+
+    private final EventType eventType;
+    private final HecSender sender;
+    private final CircuitBreaker breaker;
+    private final BlockingQueue<EventRecord>[] queues;
+    // events which did not fit in each queue, moved to the journal by the worker of the queue
+    private final BlockingQueue<EventRecord>[] overflows;
+    private final Thread[] workers;
+    // events accepted into and settled from each queue, then each overflow, a record settles once it was
+    // posted, spilled or dropped, each slot is consumed in order so its settled count reaching a mark means
+    // all earlier events settled
+    private final AtomicLong[] accepted;
+    private final AtomicLong[] settled;
+    private final AtomicLong dropped = new AtomicLong();
+    private final int priority;
+    private volatile SpillJournal journal;
+    private boolean journalUnavailable;
+
+    @SuppressWarnings("unchecked")
+    EventLane(EventType eventType, HecSender sender, CircuitBreaker breaker) {
+        this.eventType = eventType;
+        this.sender = sender;
+        this.breaker = breaker;
+        // console text is bulky and not latency sensitive, the others are small and should go first
+        boolean bulk = eventType.needSplit() || eventType == EventType.BUILD_REPORT;
+        int workerCount = Math.max(1, getSetting("workers", eventType == EventType.CONSOLE_LOG ? 2 : 1));
+        int capacity = Math.max(workerCount, getSetting("capacity", 10000));
+        this.priority = Math.min(Thread.MAX_PRIORITY, Math.max(Thread.MIN_PRIORITY,
+                getSetting("priority", bulk ? Thread.NORM_PRIORITY - 1 : Thread.NORM_PRIORITY + 1)));
+        this.queues = new BlockingQueue[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            queues[i] = new LinkedBlockingQueue<>(capacity / workerCount);
+        }
+        this.overflows = new BlockingQueue[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            overflows[i] = new LinkedBlockingQueue<>(capacity / workerCount);
+        }
+        this.workers = new Thread[workerCount];
+        this.accepted = new AtomicLong[workerCount * 2];
+        this.settled = new AtomicLong[workerCount * 2];
+        for (int i = 0; i < accepted.length; i++) {
+            accepted[i] = new AtomicLong();
+            settled[i] = new AtomicLong();
+        }
+    }
+
+    private int getSetting(String name, int defaultValue) {
+        return Integer.getInteger(PROPERTY_PREFIX + eventType.getKey() + "." + name, defaultValue);
+    }
+
+    /**
+     * Start the worker threads which are not running
+     */
+    synchronized void start() {
+        for (int i = 0; i < workers.length; i++) {
+            if (workers[i] == null || !workers[i].isAlive()) {
+                int index = i;
+                Thread thread = new Thread(() -> runWorker(index),
+                        "Khulnasoft-Event-Worker-" + eventType.getKey() + "-" + i);
+                thread.setDaemon(true);
+                thread.setPriority(priority);
+                workers[i] = thread;
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Stop the worker threads, spill their batches and the queued events to disk
+     */
+    void stop() {
+        List<Thread> stopped = new ArrayList<>();
+        synchronized (this) {
+            for (int i = 0; i < workers.length; i++) {
+                if (workers[i] != null) {
+                    // wake up the worker if it is waiting on the queue, it spills the pending batch
+                    workers[i].interrupt();
+                    stopped.add(workers[i]);
+                    workers[i] = null;
+                }
+            }
+        }
+        try {
+            for (Thread worker : stopped) {
+                worker.join(STOP_WAIT_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        spillQueued();
+        SpillJournal spill = journal;
+        if (spill != null) {
+            spill.force();
+        }
+    }
+
+    /**
+     * Move the queued and overflowed events to the journal, they are kept in memory if there is no journal
+     */
+    private void spillQueued() {
+        SpillJournal spill = getJournal();
+        if (spill == null) {
+            return;
+        }
+        KhulnasoftJenkinsInstallation config = KhulnasoftJenkinsInstallation.get();
+        int spilled = 0;
+        int dropped = 0;
+        for (int i = 0; i < queues.length; i++) {
+            // overflowed events are newer than queued ones
+            for (int slot : new int[]{i, queues.length + i}) {
+                EventRecord record;
+                while ((record = slot(slot).poll()) != null) {
+                    if (spill.append(record, config)) {
+                        spilled++;
+                    } else {
+                        dropped++;
+                    }
+                    settled[slot].incrementAndGet();
+                }
+            }
+        }
+        this.dropped.addAndGet(dropped);
+        if (dropped > 0) {
+            LOG.log(Level.WARNING, "{0} lane stopped, spilled {1} queued events, spill journal full, dropped {2}",
+                    new Object[]{eventType.getKey(), spilled, dropped});
+        } else if (spilled > 0) {
+            LOG.log(Level.INFO, "{0} lane stopped, spilled {1} queued events",
+                    new Object[]{eventType.getKey(), spilled});
+        }
+    }
+
+    /**
+     * Queue the event, if the queue is full, or the journal has a backlog, hand it over to the workers
+     * to append it to the journal
+     *
+     * @param record the event record
+     * @return true if queued or handed over
+     */
+    boolean offer(EventRecord record) {
+        SpillJournal spill = getJournal();
+        int index = indexOf(record);
+        // once events overflowed, later ones go behind them
+        boolean behind = spill != null && (spill.hasPending() || !overflows[index].isEmpty());
+        if (!behind && offer(index, record)) {
+            return true;
+        }
+        if (spill != null && offer(queues.length + index, record)) {
+            return true;
+        }
+        // the workers can not keep up with spilling, posting it out of order is better than dropping it
+        if (behind && offer(index, record)) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        LOG.log(Level.WARNING, "Event queue full, dropping event: " + record);
+        return false;
+    }
+
+    /**
+     * @param index the slot index, see {@link #slot(int)}
+     */
+    private boolean offer(int index, EventRecord record) {
+        // counted first, so a mark taken after this returns covers the record
+        accepted[index].incrementAndGet();
+        if (slot(index).offer(record)) {
+            return true;
+        }
+        accepted[index].decrementAndGet();
+        return false;
+    }
+
+    /**
+     * @param index the queue index, or queues.length plus the queue index for its overflow
+     */
+    private BlockingQueue<EventRecord> slot(int index) {
+        return index < queues.length ? queues[index] : overflows[index - queues.length];
+    }
+
+    private int indexOf(EventRecord record) {
+        if (queues.length == 1) {
+            return 0;
+        }
+        String source = record.getSource();
+        int hash = source == null ? 0 : source.hashCode();
+        return (hash & Integer.MAX_VALUE) % queues.length;
+    }
+
+    /**
+     * @return events accepted so far by each queue and overflow, followed by events dropped so far
+     */
+    long[] mark() {
+        long[] mark = new long[accepted.length + 1];
+        for (int i = 0; i < accepted.length; i++) {
+            mark[i] = accepted[i].get();
+        }
+        mark[accepted.length] = dropped.get();
+        return mark;
+    }
+
+    /**
+     * @param mark taken by {@link #mark()}
+     * @return true if events were dropped since the mark
+     */
+    boolean hasDropped(long[] mark) {
+        return dropped.get() != mark[accepted.length];
+    }
+
+    /**
+     * @param mark taken by {@link #mark()}
+     * @return true if all events accepted before the mark were posted, spilled or dropped
+     */
+    boolean isSettled(long[] mark) {
+        for (int i = 0; i < accepted.length; i++) {
+            if (settled[i].get() < mark[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Move overflowed events to the journal behind the queued ones, called by the worker of the queue only
+     * while it holds no queued event, which would be posted after them otherwise
+     *
+     * @param waitMillis how long to wait for more overflowed events, used instead of sleep during retry backoff
+     */
+    private void spillOverflow(int index, long waitMillis) throws InterruptedException {
+        BlockingQueue<EventRecord> overflow = overflows[index];
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while (true) {
+            EventRecord record = overflow.poll();
+            if (record == null) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || (record = overflow.poll(remaining, TimeUnit.MILLISECONDS)) == null) {
+                    return;
+                }
+            }
+            SpillJournal spill = getJournal();
+            if (spill != null) {
+                moveToJournal(index, spill);
+            }
+            if (spill == null || !spill.append(record, KhulnasoftJenkinsInstallation.get())) {
+                // the journal is full, the queue may have room again
+                if (!offer(index, record)) {
+                    dropped.incrementAndGet();
+                    LOG.log(Level.WARNING, "Event queue and spill journal full, dropping event: " + record);
+                }
+            }
+            settled[queues.length + index].incrementAndGet();
+        }
+    }
+
+    /**
+     * Open the spill journal under JENKINS_HOME on first use
+     *
+     * @return the journal, or null if spilling is disabled or not available, e.g. on agent
+     */
+    private SpillJournal getJournal() {
+        SpillJournal current = journal;
+        if (current != null || !SPILL_ENABLED || Jenkins.getInstanceOrNull() == null) {
+            return current;
+        }
+        synchronized (this) {
+            if (journal == null && !journalUnavailable) {
+                File dir = new File(new File(Jenkins.get().getRootDir(), SPILL_DIR_NAME), eventType.getKey());
+                SpillJournal opened = new SpillJournal(dir, SPILL_SEGMENT_SIZE, SPILL_MAX_SEGMENTS);
+                try {
+                    opened.open();
+                    journal = opened;
+                } catch (IOException e) {
+                    journalUnavailable = true;
+                    LOG.log(Level.SEVERE, "failed to open spill journal " + dir, e);
+                }
+            }
+            return journal;
+        }
+    }
+
+    /**
+     * @return true if called from a lane worker thread
+     */
+    static boolean isWorkerThread() {
+        return WORKER_THREAD.get();
+    }
+
+    /**
+     * @return number of events waiting in memory
+     */
+    int size() {
+        int size = 0;
+        for (BlockingQueue<EventRecord> queue : queues) {
+            size += queue.size();
+        }
+        return size;
+    }
+
+    /**
+     * Drain the queue in batches, a batch is posted when it reaches {@link Constants#MAX_BATCH_SIZE}
+     * or no more event arrived within {@link Constants#BATCH_LINGER_MILLIS}.
+     * Text events which can be posted to raw endpoint are grouped by source, others go to the json batch.
+     * Spilled events are replayed by the first worker once its queue is drained
+     */
+    private void runWorker(int index) {
+        WORKER_THREAD.set(true);
+        boolean replay = index == 0;
+        EventBatch batch = new EventBatch();
+        Map<String, EventBatch> rawBatches = new LinkedHashMap<>();
+        // the record which did not fit in the previous batch
+        EventRecord carried = null;
+        // records taken from the queue and not settled yet, in the batches or carried
+        long[] taken = new long[1];
+        boolean carriedTaken = false;
+        // the batches hold events taken from the journal, they are not mixed with queued events
+        boolean replayed = false;
+        try {
+            while (isCurrentWorker(index)) {
+                long before = taken[0];
+                boolean wasCarried = carried != null;
+                EventRecord record = wasCarried ? carried : nextRecord(index, replay, BATCH_LINGER_MILLIS, taken);
+                replayed = record != null && (wasCarried ? !carriedTaken : taken[0] == before);
+                carried = null;
+                if (record == null) {
+                    spillOverflow(index, 0);
+                    continue;
+                }
+                KhulnasoftJenkinsInstallation config = KhulnasoftJenkinsInstallation.get();
+                long deadline = System.currentTimeMillis() + BATCH_LINGER_MILLIS;
+                int totalSize = 0;
+                while (record != null) {
+                    EventBatch target = batch;
+                    if (record.isRaw() && config.canPostRaw(record.getEventType())) {
+                        EventType recordType = record.getEventType();
+                        String source = record.getSource();
+                        target = rawBatches.computeIfAbsent(recordType + "|" + source,
+                                k -> new EventBatch(recordType, source));
+                    }
+                    int previousSize = target.size();
+                    boolean wasEmpty = target.isEmpty();
+                    addToBatch(target, record, config);
+                    if (!wasEmpty && target.size() > MAX_BATCH_SIZE) {
+                        // a failed batch is spilled as one entry, it must fit in a spill segment
+                        target.removeLast(previousSize);
+                        carried = record;
+                        break;
+                    }
+                    totalSize += target.size() - previousSize;
+                    if (totalSize >= MAX_BATCH_SIZE) {
+                        break;
+                    }
+                    before = taken[0];
+                    record = nextRecord(index, replay, deadline - System.currentTimeMillis(), taken);
+                    carriedTaken = taken[0] > before;
+                    if (record != null && replayed && carriedTaken) {
+                        // the journal is drained, post the replayed events first
+                        carried = record;
+                        break;
+                    }
+                }
+                boolean rewound = flushBatch(index, batch, config, replayed, taken[0] > 0);
+                for (EventBatch rawBatch : rawBatches.values()) {
+                    rewound |= flushBatch(index, rawBatch, config, replayed, taken[0] > 0);
+                }
+                rawBatches.clear();
+                replayed = false;
+                if (rewound && carried != null && !carriedTaken) {
+                    // taken from the journal after the batch, it is taken again after the rewound events
+                    carried = null;
+                }
+                // the carried record is settled with the next batch
+                long flushed = carried != null && carriedTaken ? taken[0] - 1 : taken[0];
+                settled[index].addAndGet(flushed);
+                taken[0] -= flushed;
+                if (taken[0] == 0) {
+                    spillOverflow(index, 0);
+                }
+                SpillJournal spill = journal;
+                if (replay && spill != null) {
+                    // replayed events are either sent or spilled again
+                    spill.commit();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // stopped while collecting a batch
+            SpillJournal spill = getJournal();
+            if (replayed && spill != null) {
+                // the replayed events are still on disk
+                spill.rewind();
+                batch.reset();
+                rawBatches.clear();
+                if (!carriedTaken) {
+                    carried = null;
+                }
+            }
+            spillOnStop(batch);
+            for (EventBatch rawBatch : rawBatches.values()) {
+                spillOnStop(rawBatch);
+            }
+            if (carried != null && (spill == null || !spill.append(carried, KhulnasoftJenkinsInstallation.get()))) {
+                dropped.incrementAndGet();
+                LOG.log(Level.WARNING, "{0} lane stopped, dropped event: {1}", new Object[]{eventType.getKey(), carried});
+            }
+            settled[index].addAndGet(taken[0]);
+            if (replay && spill != null) {
+                spill.commit();
+            }
+        }
+    }
+
+    private void spillOnStop(EventBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        SpillJournal spill = getJournal();
+        if (spill != null && spill.append(batch)) {
+            LOG.log(Level.FINE, "{0} lane stopped, spilled {1} events to disk", new Object[]{eventType.getKey(), batch.getCount()});
+        } else {
+            dropped.addAndGet(batch.getCount());
+            LOG.log(Level.WARNING, "{0} lane stopped, dropped {1} events", new Object[]{eventType.getKey(), batch.getCount()});
+        }
+        batch.reset();
+    }
+
+    /**
+     * @return false if the lane was stopped, or restarted while the worker was busy posting
+     */
+    private synchronized boolean isCurrentWorker(int index) {
+        return workers[index] == Thread.currentThread();
+    }
+
+    /**
+     * While the journal has a backlog, queued events are moved behind it and the first worker replays it,
+     * the other workers only spill overflowed events until it is drained.
+     * A worker holding queued events ends its batch instead, so newer events are not spilled ahead of them
+     *
+     * @param waitMillis how long to wait for the queue if there is no event in memory nor on disk
+     * @return the next event, or null if timed out
+     */
+    private EventRecord nextRecord(int index, boolean replay, long waitMillis, long[] taken)
+            throws InterruptedException {
+        BlockingQueue<EventRecord> queue = queues[index];
+        SpillJournal spill = getJournal();
+        if (spill != null && spill.hasPending()) {
+            if (taken[0] > 0) {
+                return null;
+            }
+            moveToJournal(index, spill);
+            // hold off replaying while the endpoint is down
+            if (replay && breaker.isAvailable()) {
+                EventRecord record = spill.poll();
+                if (record != null) {
+                    return record;
+                }
+            } else if (waitMillis > 0) {
+                spillOverflow(index, waitMillis);
+                // events queued while waiting go behind the backlog too
+                moveToJournal(index, spill);
+            }
+            // the journal is drained, or full
+            return taken(queue.poll(), taken);
+        }
+        EventRecord record = queue.poll();
+        if (record != null) {
+            return taken(record, taken);
+        }
+        return taken(waitMillis > 0 ? queue.poll(waitMillis, TimeUnit.MILLISECONDS) : null, taken);
+    }
+
+    private void moveToJournal(int index, SpillJournal spill) {
+        BlockingQueue<EventRecord> queue = queues[index];
+        KhulnasoftJenkinsInstallation config = KhulnasoftJenkinsInstallation.get();
+        // only this worker takes from its queue, the head is removed once it is appended
+        EventRecord queued;
+        while ((queued = queue.peek()) != null && spill.append(queued, config)) {
+            queue.poll();
+            settled[index].incrementAndGet();
+        }
+    }
+
+    private static EventRecord taken(EventRecord record, long[] taken) {
+        if (record != null) {
+            taken[0]++;
+        }
+        return record;
+    }
+
+    private void addToBatch(EventBatch batch, EventRecord record, KhulnasoftJenkinsInstallation config) {
+        try {
+            batch.add(record, config);
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error encoding event: " + record, e);
+        }
+    }
+
+    /**
+     * Post the batch, failed posts are retried with exponential backoff and jitter up to
+     * {@link KhulnasoftJenkinsInstallation#getMaxRetries()} times. The batch is spilled if it still failed,
+     * or if the circuit breaker is open
+     *
+     * @param index     the worker index
+     * @param replayed  true if the events were taken from the journal, they are put back instead of spilled again
+     * @param holding   true if the worker holds queued events, overflowed events can not be spilled ahead of them
+     * @return true if the replayed events were put back to the journal
+     */
+    private boolean flushBatch(int index, EventBatch batch, KhulnasoftJenkinsInstallation config, boolean replayed,
+                               boolean holding) {
+        if (batch.isEmpty()) {
+            return false;
+        }
+        try {
+            if (!config.isValid()) {
+                LOG.log(Level.FINE, "Khulnasoft config is invalid, discard {0} events", batch.getCount());
+                return false;
+            }
+            long maxRetries = Math.max(0, config.getMaxRetries());
+            for (int attempt = 0; ; attempt++) {
+                if (!breaker.allowRequest()) {
+                    return spill(batch, null, replayed);
+                }
+                try {
+                    if (batch.isRaw()) {
+                        sender.postRaw(batch, config);
+                    } else {
+                        sender.postJson(batch, config);
+                    }
+                    breaker.onSuccess();
+                    return false;
+                } catch (HecStatusException e) {
+                    if (e.isRejected()) {
+                        // HEC is up but will never accept the batch, do not count it against the endpoint
+                        breaker.onSuccess();
+                        LOG.log(Level.WARNING, "HEC rejected " + batch.getCount() + " events", e);
+                        return false;
+                    }
+                    breaker.onFailure();
+                    if (!e.isRetryable() || attempt >= maxRetries) {
+                        return spill(batch, e, replayed);
+                    }
+                } catch (Exception e) {
+                    breaker.onFailure();
+                    if (attempt >= maxRetries) {
+                        return spill(batch, e, replayed);
+                    }
+                }
+                try {
+                    if (holding) {
+                        Thread.sleep(getBackoff(attempt));
+                    } else {
+                        // keep spilling overflowed events while waiting, the queues are likely full
+                        spillOverflow(index, getBackoff(attempt));
+                    }
+                } catch (InterruptedException e) {
+                    boolean rewound = spill(batch, e, replayed);
+                    // let the worker exit
+                    Thread.currentThread().interrupt();
+                    return rewound;
+                }
+            }
+        } finally {
+            batch.reset();
+        }
+    }
+
+    /**
+     * Full jitter backoff, a random delay up to base * 2^attempt capped at {@link Constants#RETRY_MAX_BACKOFF_MILLIS},
+     * so agents which failed at the same time do not retry at the same time
+     */
+    static long getBackoff(int attempt) {
+        long ceiling = RETRY_BACKOFF_MILLIS << Math.min(attempt, 20);
+        ceiling = Math.min(RETRY_MAX_BACKOFF_MILLIS, Math.max(1, ceiling));
+        return ThreadLocalRandom.current().nextLong(ceiling) + 1;
+    }
+
+    /**
+     * @return true if the replayed events were put back to the journal
+     */
+    private boolean spill(EventBatch batch, Exception cause, boolean replayed) {
+        SpillJournal spill = getJournal();
+        if (replayed && spill != null) {
+            // appending would put them behind newer events
+            spill.rewind();
+            LOG.log(Level.FINE, "Error replaying " + batch.getCount() + " events, kept on disk", cause);
+            return true;
+        }
+        if (spill != null && spill.append(batch)) {
+            if (cause != null) {
+                LOG.log(Level.WARNING, "Error sending " + batch.getCount() + " events, spilled to disk", cause);
+            } else {
+                LOG.log(Level.FINE, "HEC is unavailable, spilled {0} events to disk", batch.getCount());
+            }
+        } else {
+            long total = dropped.addAndGet(batch.getCount());
+            if (cause != null) {
+                LOG.log(Level.WARNING, "Error sending " + batch.getCount() + " events, dropped, "
+                        + total + " events dropped so far", cause);
+            } else {
+                // e.g. on agent, there is no journal to hold the batch while the circuit is open
+                LOG.log(Level.WARNING, "HEC is unavailable and " + batch.getCount() + " events can not be spilled, "
+                        + "dropped, " + total + " events dropped so far");
+            }
+        }
+        return false;
+    }
+}
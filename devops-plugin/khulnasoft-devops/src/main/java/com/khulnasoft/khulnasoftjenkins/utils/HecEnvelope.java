@@ -0,0 +1,150 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import com.khulnasoft.khulnasoftjenkins.KhulnasoftJenkinsInstallation;
+import com.khulnasoft.khulnasoftjenkins.model.EventType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * HEC metadata resolved per {@link EventType}, host/source/sourcetype/index are looked up and escaped once
+ * when the configuration changes, the encoder and sender then copy the cached bytes for each event.
+ * <p>
+ * The default source of each event type is cached, an explicit source, e.g. build url, is spliced in between.
+ */
+public class HecEnvelope {
+    private final Map<EventType, Template> templates = new EnumMap<>(EventType.class);
+
+    private HecEnvelope(KhulnasoftJenkinsInstallation config) {
+        for (EventType eventType : EventType.values()) {
+            templates.put(eventType, new Template(eventType, config));
+        }
+    }
+
+    /**
+     * @param config the plugin config
+     * @return templates built from current metadata of config
+     */
+    public static HecEnvelope build(KhulnasoftJenkinsInstallation config) {
+        return new HecEnvelope(config);
+    }
+
+    /**
+     * @param eventType the event type
+     * @return the template of the event type
+     */
+    public Template get(EventType eventType) {
+        return templates.get(eventType);
+    }
+
+    public static class Template {
+        // ,"host":"...","source":
+        private final byte[] hostAndSourceKey;
+        // "..." default source as json string
+        private final byte[] defaultSource;
+        // ,"sourcetype":"...","index":"...","event":
+        private final byte[] metaDataAndEventKey;
+        // raw url up to and including source=
+        private final String rawUrlPrefix;
+        private final String rawUrlSuffix;
+        private final String defaultRawUrl;
+
+        Template(EventType eventType, KhulnasoftJenkinsInstallation config) {
+            String host = config.getMetadataHost();
+            String source = config.getMetadataSource(eventType.getDisplayName());
+            String index = HecEventEncoder.getMetaData("index", eventType, config);
+            try {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                buffer.write(',');
+                writeKey("host", buffer);
+                HecEventEncoder.writeValue(host, buffer);
+                buffer.write(',');
+                writeKey("source", buffer);
+                hostAndSourceKey = buffer.toByteArray();
+
+                buffer.reset();
+                HecEventEncoder.writeString(source, buffer);
+                defaultSource = buffer.toByteArray();
+
+                buffer.reset();
+                writeMetaData("sourcetype", HecEventEncoder.getMetaData("sourcetype", eventType, config), buffer);
+                writeMetaData("index", index, buffer);
+                buffer.write(',');
+                writeKey("event", buffer);
+                metaDataAndEventKey = buffer.toByteArray();
+            } catch (IOException e) {
+                // ByteArrayOutputStream does not throw
+                throw new UncheckedIOException(e);
+            }
+
+            // raw endpoint uses text source type, see metadata.properties
+            String sourceType = config.getMetaData(eventType.getDisplayName() + ".sourcetype");
+            if (sourceType == null) {
+                sourceType = config.getMetaData("sourcetype_text");
+            }
+            StringBuilder url = new StringBuilder(String.valueOf(config.getRawUrl()));
+            char separator = appendParameter(url, '?', "host", host);
+            rawUrlPrefix = url.append(separator).append("source=").toString();
+            StringBuilder suffix = new StringBuilder();
+            appendParameter(suffix, '&', "sourcetype", sourceType);
+            appendParameter(suffix, '&', "index", index);
+            rawUrlSuffix = suffix.toString();
+            defaultRawUrl = rawUrlPrefix + URLEncoder.encode(source, StandardCharsets.UTF_8) + rawUrlSuffix;
+        }
+
+        /**
+         * Write the envelope fields between time and event body
+         *
+         * @param source the event source, or null to use the default source of the event type
+         * @param out    the output
+         * @throws IOException if the output can not be written
+         */
+        void write(String source, OutputStream out) throws IOException {
+            out.write(hostAndSourceKey);
+            if (source == null) {
+                out.write(defaultSource);
+            } else {
+                HecEventEncoder.writeString(source, out);
+            }
+            out.write(metaDataAndEventKey);
+        }
+
+        /**
+         * @param source the batch source, or null to use the default source of the event type
+         * @return raw endpoint url with metadata in query parameters
+         */
+        String getRawUrl(String source) {
+            if (source == null) {
+                return defaultRawUrl;
+            }
+            return rawUrlPrefix + URLEncoder.encode(source, StandardCharsets.UTF_8) + rawUrlSuffix;
+        }
+
+        private static void writeKey(String key, OutputStream out) throws IOException {
+            HecEventEncoder.writeString(key, out);
+            out.write(':');
+        }
+
+        private static void writeMetaData(String keyName, String value, OutputStream out) throws IOException {
+            if (value != null) {
+                out.write(',');
+                writeKey(keyName, out);
+                HecEventEncoder.writeString(value, out);
+            }
+        }
+
+        private static char appendParameter(StringBuilder url, char separator, String name, String value) {
+            if (value == null) {
+                return separator;
+            }
+            url.append(separator).append(name).append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+            return '&';
+        }
+    }
+}
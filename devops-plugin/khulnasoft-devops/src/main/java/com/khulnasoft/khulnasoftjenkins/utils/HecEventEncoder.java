@@ -0,0 +1,340 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import com.khulnasoft.khulnasoftjenkins.KhulnasoftJenkinsInstallation;
+import com.khulnasoft.khulnasoftjenkins.model.EmptyTestCaseGroup;
+import com.khulnasoft.khulnasoftjenkins.model.EventRecord;
+import com.khulnasoft.khulnasoftjenkins.model.EventType;
+import com.khulnasoft.khulnasoftjenkins.model.JunitTestCaseGroup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Encode {@link EventRecord} into HEC json envelope, e.g.
+ * {"time":1500000000.123,"host":"jenkins","source":"...","sourcetype":"json:jenkins","index":"jenkins","event":{...}}
+ * <p>
+ * The text is written as utf-8 bytes straight to the output, no intermediate String is built for the event,
+ * the metadata fields are copied from {@link HecEnvelope}
+ */
+public class HecEventEncoder {
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private HecEventEncoder() {
+    }
+
+    /**
+     * Write one HEC event, without trailing new line
+     *
+     * @param record the event record
+     * @param config the plugin config which holds metadata
+     * @param out    the output
+     * @throws IOException if the output can not be written
+     */
+    public static void encode(EventRecord record, KhulnasoftJenkinsInstallation config, OutputStream out) throws IOException {
+        out.write('{');
+        writeKey("time", out);
+        writeTime(record.getTime(), out);
+        config.getEnvelope().get(record.getEventType()).write(record.getSource(), out);
+        if (record.isRaw()) {
+            byte[] text = record.getRawData();
+            out.write('{');
+            writeKey("message", out);
+            writeString(text, 0, text.length, out);
+            out.write('}');
+        } else if (record.isJson()) {
+            byte[] json = record.getRawData();
+            out.write(json, 0, json.length);
+        } else if (record instanceof LogRecordEvent) {
+            ((LogRecordEvent) record).writeJson(out);
+        } else {
+            writeValue(record.getData(), out);
+        }
+        out.write('}');
+    }
+
+    /**
+     * @param keyName   metadata key name, such as index or sourcetype
+     * @param eventType event type
+     * @param config    the plugin config
+     * @return the value configured for the event type, or the global one, e.g. console_log.index then index
+     */
+    public static String getMetaData(String keyName, EventType eventType, KhulnasoftJenkinsInstallation config) {
+        String value = config.getMetaData(eventType.getDisplayName() + "." + keyName);
+        if (value == null) {
+            value = config.getMetaData(keyName);
+        }
+        return value;
+    }
+
+    /**
+     * HEC time is epoch seconds with optional milliseconds fraction
+     */
+    private static void writeTime(long millis, OutputStream out) throws IOException {
+        writeLong(millis / 1000, out);
+        int fraction = (int) (millis % 1000);
+        out.write('.');
+        out.write('0' + fraction / 100);
+        out.write('0' + fraction / 10 % 10);
+        out.write('0' + fraction % 10);
+    }
+
+    private static void writeKey(String key, OutputStream out) throws IOException {
+        writeString(key, out);
+        out.write(':');
+    }
+
+    @SuppressWarnings("unchecked")
+    static void writeValue(Object value, OutputStream out) throws IOException {
+        if (value == null) {
+            writeAscii("null", out);
+        } else if (value instanceof CharSequence) {
+            writeString((CharSequence) value, out);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            writeLong(((Number) value).longValue(), out);
+        } else if (value instanceof Double) {
+            writeDouble((Double) value, out);
+        } else if (value instanceof Float) {
+            writeFloat((Float) value, out);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            writeAscii(value.toString(), out);
+        } else if (value instanceof Map) {
+            out.write('{');
+            boolean first = true;
+            for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) value).entrySet()) {
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                writeKey(String.valueOf(entry.getKey()), out);
+                writeValue(entry.getValue(), out);
+            }
+            out.write('}');
+        } else if (value instanceof JunitTestCaseGroup) {
+            writeTestCaseGroup((JunitTestCaseGroup) value, out);
+        } else if (value instanceof Collection) {
+            out.write('[');
+            boolean first = true;
+            for (Object item : (Collection) value) {
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                writeValue(item, out);
+            }
+            out.write(']');
+        } else if (value instanceof Object[]) {
+            out.write('[');
+            Object[] items = (Object[]) value;
+            for (int i = 0; i < items.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                writeValue(items[i], out);
+            }
+            out.write(']');
+        } else if (value instanceof Enum) {
+            writeString(((Enum) value).name(), out);
+        } else {
+            writeString(value.toString(), out);
+        }
+    }
+
+    /**
+     * Write the counts and the test case columns of the group, no map is built per test case
+     */
+    private static void writeTestCaseGroup(JunitTestCaseGroup group, OutputStream out) throws IOException {
+        out.write('{');
+        writeKey("total", out);
+        writeLong(group.getTotal(), out);
+        out.write(',');
+        writeKey("failures", out);
+        writeLong(group.getFailures(), out);
+        out.write(',');
+        writeKey("passes", out);
+        writeLong(group.getPasses(), out);
+        out.write(',');
+        writeKey("skips", out);
+        writeLong(group.getSkips(), out);
+        out.write(',');
+        writeKey("duration", out);
+        writeLong(group.getDuration(), out);
+        if (group instanceof EmptyTestCaseGroup) {
+            out.write(',');
+            writeKey("warning", out);
+            writeAscii(String.valueOf(((EmptyTestCaseGroup) group).isWarning()), out);
+        }
+        out.write(',');
+        writeKey("testcase", out);
+        out.write('[');
+        for (int i = 0; i < group.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write('{');
+            writeKey("name", out);
+            writeValue(group.getName(i), out);
+            out.write(',');
+            writeKey("classname", out);
+            writeValue(group.getClassName(i), out);
+            out.write(',');
+            writeKey("duration", out);
+            writeValue(group.getDuration(i), out);
+            out.write(',');
+            writeKey("status", out);
+            writeString(group.getStatus(i), out);
+            writeOptionalField("error_details", group.getErrorDetails(i), out);
+            writeOptionalField("error_stack_trace", group.getErrorStackTrace(i), out);
+            writeOptionalField("stdout", group.getStdout(i), out);
+            writeOptionalField("stderr", group.getStderr(i), out);
+            out.write('}');
+        }
+        out.write(']');
+        out.write('}');
+    }
+
+    private static void writeOptionalField(String key, String value, OutputStream out) throws IOException {
+        if (value != null) {
+            out.write(',');
+            writeKey(key, out);
+            writeString(value, out);
+        }
+    }
+
+    /**
+     * Write the decimal digits without creating a String
+     */
+    static void writeLong(long value, OutputStream out) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value), out);
+            return;
+        }
+        if (value < 0) {
+            out.write('-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.write((int) ('0' + value / divisor % 10));
+        }
+    }
+
+    /**
+     * Write the number, NaN and infinity are not valid json and are written as null
+     */
+    static void writeDouble(double value, OutputStream out) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeAscii("null", out);
+        } else if (value == (long) value && Math.abs(value) < 1e15) {
+            writeLong((long) value, out);
+        } else {
+            writeAscii(Double.toString(value), out);
+        }
+    }
+
+    /**
+     * Write the shortest decimal of the float, e.g. 45.123 instead of the widened double 45.12300109863281,
+     * NaN and infinity are written as null
+     */
+    static void writeFloat(float value, OutputStream out) throws IOException {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            writeAscii("null", out);
+        } else {
+            writeAscii(Float.toString(value), out);
+        }
+    }
+
+    private static void writeAscii(String text, OutputStream out) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            out.write(text.charAt(i));
+        }
+    }
+
+    /**
+     * Write json string literal as utf-8, escape quote, backslash and control characters
+     */
+    static void writeString(CharSequence text, OutputStream out) throws IOException {
+        out.write('"');
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                writeAsciiChar(c, out);
+            } else if (c < 0x800) {
+                out.write(0xC0 | (c >> 6));
+                out.write(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                out.write(0xF0 | (codePoint >> 18));
+                out.write(0x80 | ((codePoint >> 12) & 0x3F));
+                out.write(0x80 | ((codePoint >> 6) & 0x3F));
+                out.write(0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                //unpaired surrogate can not be encoded
+                out.write('?');
+            } else {
+                out.write(0xE0 | (c >> 12));
+                out.write(0x80 | ((c >> 6) & 0x3F));
+                out.write(0x80 | (c & 0x3F));
+            }
+        }
+        out.write('"');
+    }
+
+    /**
+     * Write utf-8 text as json string literal, non-ascii bytes are copied as is
+     */
+    static void writeString(byte[] text, int offset, int length, OutputStream out) throws IOException {
+        out.write('"');
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int b = text[i] & 0xFF;
+            if (b < 0x80) {
+                writeAsciiChar(b, out);
+            } else {
+                out.write(b);
+            }
+        }
+        out.write('"');
+    }
+
+    private static void writeAsciiChar(int c, OutputStream out) throws IOException {
+        switch (c) {
+            case '"':
+                out.write('\\');
+                out.write('"');
+                break;
+            case '\\':
+                out.write('\\');
+                out.write('\\');
+                break;
+            case '\n':
+                out.write('\\');
+                out.write('n');
+                break;
+            case '\r':
+                out.write('\\');
+                out.write('r');
+                break;
+            case '\t':
+                out.write('\\');
+                out.write('t');
+                break;
+            default:
+                if (c < 0x20) {
+                    out.write('\\');
+                    out.write('u');
+                    out.write('0');
+                    out.write('0');
+                    out.write(HEX[c >> 4]);
+                    out.write(HEX[c & 0xF]);
+                } else {
+                    out.write(c);
+                }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import com.khulnasoft.khulnasoftjenkins.KhulnasoftJenkinsInstallation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import static com.khulnasoft.khulnasoftjenkins.Constants.GZIP_ENABLED;
+import static com.khulnasoft.khulnasoftjenkins.Constants.GZIP_THRESHOLD;
+import static com.khulnasoft.khulnasoftjenkins.Constants.HTTP_TIMEOUT_MILLIS;
+
+/**
+ * Post event batches to HTTP Event Collector
+ */
+public class HecSender {
+    private static final Logger LOG = Logger.getLogger(HecSender.class.getName());
+    private static final String AUTH_SCHEME = "Khulnasoft ";
+    private static final int MAX_ERROR_LENGTH = 1024;
+    // http chunk size and deflater buffer size for compressed body
+    private static final int GZIP_CHUNK_SIZE = 1 << 16;
+
+    /**
+     * Post the batch as newline-delimited HEC json events
+     *
+     * @param batch  the encoded events
+     * @param config the plugin config which holds url and token
+     * @throws IOException if the request failed, or {@link HecStatusException} if HEC did not accept the batch
+     */
+    public void postJson(EventBatch batch, KhulnasoftJenkinsInstallation config) throws IOException {
+        post(config.getJsonUrl(), "application/json; charset=utf-8", batch, config);
+    }
+
+    /**
+     * Post the batch text to raw endpoint, host/source/sourcetype/index are passed once in query parameters
+     *
+     * @param batch  the raw batch, all chunks share the same event type and source
+     * @param config the plugin config which holds url, token and metadata
+     * @throws IOException if the request failed, or {@link HecStatusException} if HEC did not accept the batch
+     */
+    public void postRaw(EventBatch batch, KhulnasoftJenkinsInstallation config) throws IOException {
+        post(getRawUrl(batch, config), "text/plain; charset=utf-8", batch, config);
+    }
+
+    static String getRawUrl(EventBatch batch, KhulnasoftJenkinsInstallation config) {
+        return config.getEnvelope().get(batch.getEventType()).getRawUrl(batch.getSource());
+    }
+
+    private void post(String url, String contentType, EventBatch batch, KhulnasoftJenkinsInstallation config) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(HTTP_TIMEOUT_MILLIS);
+            connection.setReadTimeout(HTTP_TIMEOUT_MILLIS);
+            connection.setRequestProperty("Authorization", AUTH_SCHEME + config.getToken());
+            connection.setRequestProperty("Content-Type", contentType);
+            if (GZIP_ENABLED && batch.size() > GZIP_THRESHOLD) {
+                // compressed size is unknown until the body is written, stream it in chunks
+                // so the compressed payload is never held in memory
+                connection.setRequestProperty("Content-Encoding", "gzip");
+                connection.setChunkedStreamingMode(GZIP_CHUNK_SIZE);
+                try (OutputStream out = new GZIPOutputStream(connection.getOutputStream(), GZIP_CHUNK_SIZE)) {
+                    batch.writeTo(out);
+                }
+            } else {
+                connection.setFixedLengthStreamingMode(batch.size());
+                try (OutputStream out = connection.getOutputStream()) {
+                    batch.writeTo(out);
+                }
+            }
+            int status = connection.getResponseCode();
+            if (status < 200 || status >= 300) {
+                throw new HecStatusException(status, "failed to post " + batch.getCount() + " events to " + url
+                        + ", status: " + status + ", response: " + readError(connection));
+            }
+            // read the response fully so the connection can be reused by keep-alive
+            try (InputStream input = connection.getInputStream()) {
+                drain(input);
+            }
+            LOG.log(Level.FINE, "posted {0} events, {1} bytes", new Object[]{batch.getCount(), batch.size()});
+        } catch (IOException e) {
+            // the connection is in unknown state, do not put it back to keep-alive cache
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    private static String readError(HttpURLConnection connection) {
+        try (InputStream error = connection.getErrorStream()) {
+            if (error == null) {
+                return "";
+            }
+            byte[] buf = new byte[MAX_ERROR_LENGTH];
+            int length = 0;
+            int read;
+            while (length < buf.length && (read = error.read(buf, length, buf.length - length)) != -1) {
+                length += read;
+            }
+            return new String(buf, 0, length, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static void drain(InputStream input) throws IOException {
+        byte[] buf = new byte[512];
+        while (input.read(buf) != -1) {
+            // discard
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import java.io.IOException;
+
+/**
+ * HEC responded with a non-2xx status
+ */
+public class HecStatusException extends IOException {
+    private final int status;
+
+    public HecStatusException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return true if HEC rejected the payload itself, e.g. malformed events or request too large,
+     * posting the same batch again will never succeed
+     */
+    public boolean isRejected() {
+        return status == 400 || status == 413;
+    }
+
+    /**
+     * @return true if the request may succeed later, server side errors and throttling
+     */
+    public boolean isRetryable() {
+        return status >= 500 || status == 408 || status == 429;
+    }
+}
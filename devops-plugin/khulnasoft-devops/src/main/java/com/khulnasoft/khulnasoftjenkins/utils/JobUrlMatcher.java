@@ -0,0 +1,126 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Job url filter with the same result as {@code pattern.matcher(url).find()}.
+ * <p>
+ * Job filters are mostly plain folder or job names joined by |, e.g. {@code ^job/sandbox/|job/test-}.
+ * Such a pattern is matched without the regex engine, anchored names are looked up in a prefix trie
+ * and the others with {@link String#indexOf(String)}. Any other pattern falls back to the regex.
+ */
+public class JobUrlMatcher {
+    // characters which make an alternative not literal, | is the separator and ^ is allowed at the start
+    private static final String META_CHARACTERS = "\\.[]{}()*+?$^|";
+
+    private final Pattern pattern;
+    // null if the pattern is not literal
+    private final TrieNode prefixes;
+    private final String[] substrings;
+
+    private JobUrlMatcher(Pattern pattern, TrieNode prefixes, String[] substrings) {
+        this.pattern = pattern;
+        this.prefixes = prefixes;
+        this.substrings = substrings;
+    }
+
+    /**
+     * @param pattern the regex, null to match nothing
+     * @return the matcher, or null if pattern is null
+     */
+    public static JobUrlMatcher compile(Pattern pattern) {
+        if (pattern == null) {
+            return null;
+        }
+        if (pattern.flags() != 0) {
+            return new JobUrlMatcher(pattern, null, null);
+        }
+        TrieNode prefixes = new TrieNode();
+        List<String> substrings = new ArrayList<>();
+        for (String alternative : pattern.pattern().split("\\|", -1)) {
+            boolean anchored = alternative.startsWith("^");
+            String literal = anchored ? alternative.substring(1) : alternative;
+            if (literal.isEmpty() || !isLiteral(literal)) {
+                // empty alternative matches anything, leave it to the regex as well
+                return new JobUrlMatcher(pattern, null, null);
+            }
+            if (anchored) {
+                prefixes.add(literal);
+            } else {
+                substrings.add(literal);
+            }
+        }
+        return new JobUrlMatcher(pattern, prefixes, substrings.toArray(new String[0]));
+    }
+
+    private static boolean isLiteral(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (META_CHARACTERS.indexOf(text.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param url the job url
+     * @return true if the pattern is found in url
+     */
+    public boolean find(String url) {
+        if (prefixes == null) {
+            return pattern.matcher(url).find();
+        }
+        if (prefixes.matchesPrefixOf(url)) {
+            return true;
+        }
+        for (String substring : substrings) {
+            if (url.contains(substring)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the pattern is matched without regex
+     */
+    public boolean isLiteral() {
+        return prefixes != null;
+    }
+
+    @Override
+    public String toString() {
+        return pattern.pattern();
+    }
+
+    private static class TrieNode {
+        private final Map<Character, TrieNode> children = new HashMap<>();
+        private boolean terminal;
+
+        void add(String word) {
+            TrieNode node = this;
+            for (int i = 0; i < word.length(); i++) {
+                node = node.children.computeIfAbsent(word.charAt(i), c -> new TrieNode());
+            }
+            node.terminal = true;
+        }
+
+        /**
+         * @return true if any word added is a prefix of text
+         */
+        boolean matchesPrefixOf(String text) {
+            TrieNode node = this;
+            for (int i = 0; i < text.length() && !node.terminal; i++) {
+                node = node.children.get(text.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+            }
+            return node.terminal;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import com.khulnasoft.khulnasoftjenkins.Constants;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.khulnasoft.khulnasoftjenkins.model.EventType.QUEUE_INFO;
+
+/**
+ * Summarize JVM runtime activity between two samples, GC count and time, process CPU, allocated bytes
+ * and monitor contention, so a slow controller can be diagnosed without attaching a profiler.
+ * <p>
+ * Counters are read from the platform MXBeans, which are maintained by the JVM anyway.
+ * Allocation and contention are summed over live threads, a thread which ended between two samples
+ * only contributes what it did until the previous sample. Instances are not thread safe.
+ */
+public class JvmRuntimeMetrics {
+    private static final Logger LOG = Logger.getLogger(JvmRuntimeMetrics.class.getName());
+    private static final String TAG_NAME = "jvm_runtime";
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final OperatingSystemMXBean osMXBean = ManagementFactory.getOperatingSystemMXBean();
+    private final boolean allocationSupported;
+    private long lastSampleTime;
+    private long lastGcCount;
+    private long lastGcTime;
+    private long lastCpuTime = -1;
+    // allocated bytes and blocked count by thread id, as of last sample
+    private Map<Long, long[]> lastThreadCounters = new HashMap<>();
+
+    public JvmRuntimeMetrics() {
+        boolean supported = false;
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadMXBean;
+            supported = bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled();
+        }
+        this.allocationSupported = supported;
+    }
+
+    /**
+     * Take a sample and send the summary since last sample, the first call only records the baseline
+     *
+     * @return true if a summary was sent
+     */
+    public boolean send() {
+        long now = System.currentTimeMillis();
+        long gcCount = 0;
+        long gcTime = 0;
+        for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            // -1 if undefined
+            gcCount += Math.max(0, gcBean.getCollectionCount());
+            gcTime += Math.max(0, gcBean.getCollectionTime());
+        }
+        long cpuTime = getProcessCpuTime();
+        long[] threadIds = threadMXBean.getAllThreadIds();
+        long[] allocated = getAllocatedBytes(threadIds);
+        ThreadInfo[] threadInfos = threadMXBean.getThreadInfo(threadIds, 0);
+        Map<Long, long[]> threadCounters = new HashMap<>(threadIds.length * 2);
+        long allocatedBytes = 0;
+        long blockedCount = 0;
+        int blockedThreads = 0;
+        for (int i = 0; i < threadIds.length; i++) {
+            ThreadInfo info = threadInfos[i];
+            if (info == null) {
+                // thread ended
+                continue;
+            }
+            long[] counters = {allocated[i], info.getBlockedCount()};
+            threadCounters.put(threadIds[i], counters);
+            long[] last = lastThreadCounters.get(threadIds[i]);
+            if (last == null) {
+                last = new long[2];
+            }
+            allocatedBytes += Math.max(0, counters[0] - last[0]);
+            blockedCount += Math.max(0, counters[1] - last[1]);
+            if (info.getThreadState() == Thread.State.BLOCKED) {
+                blockedThreads++;
+            }
+        }
+        boolean baseline = lastSampleTime == 0;
+        long interval = now - lastSampleTime;
+        if (!baseline && interval > 0) {
+            EventBuilder event = new EventBuilder(QUEUE_INFO)
+                    .put(Constants.TAG, TAG_NAME)
+                    .put("interval_seconds", interval / 1000f)
+                    .put("gc_count", gcCount - lastGcCount)
+                    .put("gc_time_ms", gcTime - lastGcTime)
+                    .put("gc_time_percent", (gcTime - lastGcTime) * 100f / interval)
+                    .put("thread_count", threadMXBean.getThreadCount())
+                    .put("blocked_threads", blockedThreads)
+                    .put("blocked_count", blockedCount);
+            if (cpuTime >= 0 && lastCpuTime >= 0) {
+                long cpuMillis = (cpuTime - lastCpuTime) / 1000000;
+                event.put("process_cpu_ms", cpuMillis)
+                        .put("process_cpu_percent", cpuMillis * 100f / interval / osMXBean.getAvailableProcessors());
+            }
+            if (allocationSupported) {
+                event.put("allocated_mb", allocatedBytes >> 20)
+                        .put("allocation_rate_mb", (allocatedBytes >> 10) / 1024f / interval * 1000);
+            }
+            event.send();
+        }
+        lastSampleTime = now;
+        lastGcCount = gcCount;
+        lastGcTime = gcTime;
+        lastCpuTime = cpuTime;
+        lastThreadCounters = threadCounters;
+        return !baseline;
+    }
+
+    /**
+     * @return process cpu time in nanoseconds, or -1 if not supported
+     */
+    private long getProcessCpuTime() {
+        if (osMXBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) osMXBean).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private long[] getAllocatedBytes(long[] threadIds) {
+        if (allocationSupported) {
+            try {
+                return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(threadIds);
+            } catch (UnsupportedOperationException e) {
+                LOG.log(Level.FINE, "thread allocated memory is not supported", e);
+            }
+        }
+        return new long[threadIds.length];
+    }
+}
@@ -4,13 +4,15 @@ import com.khulnasoft.khulnasoftjenkins.model.EventRecord;
 import com.khulnasoft.khulnasoftjenkins.model.EventType;
 import com.khulnasoft.khulnasoftjenkins.KhulnasoftJenkinsInstallation;
 
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import static com.khulnasoft.khulnasoftjenkins.Constants.CIRCUIT_FAILURE_THRESHOLD;
+import static com.khulnasoft.khulnasoftjenkins.Constants.CIRCUIT_OPEN_MILLIS;
 
 /**
  * Service for sending log events to Khulnasoft
@@ -19,10 +21,11 @@ public class KhulnasoftLogService {
 
     private static final Logger LOG = Logger.getLogger(KhulnasoftLogService.class.getName());
     private static KhulnasoftLogService instance;
+    private static final long AWAIT_POLL_MILLIS = 50;
 
-    private final BlockingQueue<Object> eventQueue = new LinkedBlockingQueue<>(10000);
+    // one lane per event type, so small events are not queued behind console text
+    private final Map<EventType, EventLane> lanes = new EnumMap<>(EventType.class);
     private final AtomicBoolean workerRunning = new AtomicBoolean(false);
-    private final AtomicBoolean workerStopped = new AtomicBoolean(false);
 
     /**
      * Get singleton instance
@@ -36,6 +39,12 @@ public class KhulnasoftLogService {
     }
 
     private KhulnasoftLogService() {
+        HecSender sender = new HecSender();
+        // all lanes post to the same endpoint and share its health
+        CircuitBreaker breaker = new CircuitBreaker(CIRCUIT_FAILURE_THRESHOLD, CIRCUIT_OPEN_MILLIS);
+        for (EventType eventType : EventType.values()) {
+            lanes.put(eventType, new EventLane(eventType, sender, breaker));
+        }
         startWorker();
     }
 
@@ -79,12 +88,10 @@ public class KhulnasoftLogService {
             return false;
         }
 
+        startWorker();
         try {
-            boolean offered = eventQueue.offer(record);
-            if (!offered) {
-                LOG.log(Level.WARNING, "Event queue full, dropping event: " + record);
-            }
-            return offered;
+            EventType eventType = record.getEventType();
+            return lanes.get(eventType == null ? EventType.LOG : eventType).offer(record);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Error queuing event", e);
             return false;
@@ -116,6 +123,24 @@ public class KhulnasoftLogService {
         return send(record);
     }
 
+    /**
+     * Send utf-8 text, such as console lines, the bytes are posted to raw endpoint as is if supported
+     * @param text the buffer holding utf-8 text
+     * @param length the length of text in the buffer
+     * @param eventType the event type
+     * @param source the source name
+     * @return true if queued successfully
+     */
+    public boolean send(byte[] text, int length, EventType eventType, String source) {
+        if (!KhulnasoftJenkinsInstallation.get().isEnabled()) {
+            return false;
+        }
+        // the caller reuses its buffer, keep a copy of the exact size
+        EventRecord record = new EventRecord(Arrays.copyOf(text, length), eventType);
+        record.setSource(source);
+        return send(record);
+    }
+
     /**
      * Send a batch of events
      * @param events list of events
@@ -146,75 +171,75 @@ public class KhulnasoftLogService {
     }
 
     /**
-     * Start the worker thread
+     * Start the worker threads of all lanes
      */
     private void startWorker() {
         if (workerRunning.compareAndSet(false, true)) {
-            Thread workerThread = new Thread(() -> {
-                while (!workerStopped.get()) {
-                    try {
-                        Object event = eventQueue.take();
-
-                        if (event instanceof EventRecord) {
-                            processEvent((EventRecord) event);
-                        } else if (event instanceof Map) {
-                            @SuppressWarnings("unchecked")
-                            Map<String, Object> eventData = (Map<String, Object>) event;
-                            // This would typically send to HTTP endpoint
-                            LOG.fine("Would send event to Khulnasoft: " + eventData);
-                        } else {
-                            LOG.fine("Would send event to Khulnasoft: " + event);
-                        }
-
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    } catch (Exception e) {
-                        LOG.log(Level.SEVERE, "Error processing event", e);
-                    }
-                }
-            }, "Khulnasoft-Event-Worker");
-            workerThread.setDaemon(true);
-            workerThread.start();
+            for (EventLane lane : lanes.values()) {
+                lane.start();
+            }
         }
     }
 
     /**
-     * Process an event record
-     * @param record the event record
+     * Stop the worker threads of all lanes
      */
-    private void processEvent(EventRecord record) {
-        try {
-            // This is where the actual HTTP sending would happen
-            // For now, just log the event
-            LOG.fine("Processing event: " + record);
-
-            // In a real implementation, this would:
-            // 1. Format the event according to Khulnasoft HEC format
-            // 2. Send via HTTP POST to the configured endpoint
-            // 3. Handle retries and error conditions
+    public void stopWorker() {
+        if (workerRunning.compareAndSet(true, false)) {
+            for (EventLane lane : lanes.values()) {
+                lane.stop();
+            }
+        }
+    }
 
-        } catch (Exception e) {
-            LOG.log(Level.SEVERE, "Error processing event: " + record, e);
+    /**
+     * Mark the events queued so far, to wait for them with {@link #awaitSent(Map, long)}
+     * @return the mark
+     */
+    public Map<EventType, long[]> markQueued() {
+        Map<EventType, long[]> mark = new EnumMap<>(EventType.class);
+        for (Map.Entry<EventType, EventLane> entry : lanes.entrySet()) {
+            mark.put(entry.getKey(), entry.getValue().mark());
         }
+        return mark;
     }
 
     /**
-     * Stop the worker thread
+     * Wait until the events queued before the mark were posted, or spilled to disk
+     * @param mark taken by {@link #markQueued()}
+     * @param timeoutMillis how long to wait
+     * @return false if timed out, or events were dropped since the mark
+     * @throws InterruptedException if interrupted while waiting
      */
-    public void stopWorker() {
-        workerStopped.set(true);
-        if (workerRunning.get()) {
-            // Interrupt the worker thread if it's waiting
-            // The thread will check workerStopped and exit
+    public boolean awaitSent(Map<EventType, long[]> mark, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Map.Entry<EventType, long[]> entry : mark.entrySet()) {
+            EventLane lane = lanes.get(entry.getKey());
+            while (!lane.isSettled(entry.getValue())) {
+                if (System.currentTimeMillis() >= deadline) {
+                    return false;
+                }
+                Thread.sleep(AWAIT_POLL_MILLIS);
+            }
+            if (lane.hasDropped(entry.getValue())) {
+                return false;
+            }
         }
+        return true;
     }
 
     /**
-     * Release connections (placeholder)
+     * Check if the current thread is posting events, anything it logs must not be sent again
+     * @return true if called from a sender thread
+     */
+    public static boolean isSenderThread() {
+        return EventLane.isWorkerThread();
+    }
+
+    /**
+     * Release connections, idle keep-alive connections are managed by the jdk and closed on timeout
      */
     public void releaseConnection() {
-        // In a real implementation, this would close HTTP connections
         LOG.info("Releasing Khulnasoft connections");
     }
 
@@ -223,6 +248,19 @@ public class KhulnasoftLogService {
      * @return current queue size
      */
     public int getQueueSize() {
-        return eventQueue.size();
+        int size = 0;
+        for (EventLane lane : lanes.values()) {
+            size += lane.size();
+        }
+        return size;
+    }
+
+    /**
+     * Get queue size of one event type for monitoring
+     * @param eventType the event type
+     * @return current queue size of the event type
+     */
+    public int getQueueSize(EventType eventType) {
+        return lanes.get(eventType).size();
     }
 }
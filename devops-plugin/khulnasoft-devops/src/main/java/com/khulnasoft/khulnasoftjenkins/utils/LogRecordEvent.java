@@ -0,0 +1,131 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import com.khulnasoft.khulnasoftjenkins.model.EventRecord;
+import com.khulnasoft.khulnasoftjenkins.model.EventType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Jdk log event which keeps the {@link LogRecord} and renders it when the event is encoded on the sender thread,
+ * so the logging thread does not pay for message formatting and stack trace printing
+ */
+public class LogRecordEvent extends EventRecord {
+    private static final Formatter MESSAGE_FORMATTER = new Formatter() {
+        @Override
+        public String format(LogRecord record) {
+            return formatMessage(record);
+        }
+    };
+    private static final String SOURCE_PREFIX = "logger://";
+
+    private final LogRecord record;
+
+    /**
+     * @param record the log record, must not be modified afterwards
+     */
+    public LogRecordEvent(LogRecord record) {
+        super(EventType.LOG);
+        this.record = record;
+    }
+
+    /**
+     * Build the event map, only used when the event is not encoded by {@link #writeJson(OutputStream)}
+     *
+     * @return the event data map
+     */
+    @Override
+    public Map<String, Object> getData() {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("thread_id", record.getThreadID());
+        event.put("level", record.getLevel().getName());
+        event.put("message", MESSAGE_FORMATTER.formatMessage(record));
+        event.put("log_source", getLogSource());
+        String thrown = getThrown();
+        if (thrown != null) {
+            event.put("log_thrown", thrown);
+        }
+        return event;
+    }
+
+    /**
+     * Write the same fields as {@link #getData()} straight to the output as json object
+     *
+     * @param out the output
+     * @throws IOException if the output can not be written
+     */
+    void writeJson(OutputStream out) throws IOException {
+        out.write('{');
+        HecEventEncoder.writeString("thread_id", out);
+        out.write(':');
+        HecEventEncoder.writeValue(record.getThreadID(), out);
+        out.write(',');
+        HecEventEncoder.writeString("level", out);
+        out.write(':');
+        HecEventEncoder.writeString(record.getLevel().getName(), out);
+        out.write(',');
+        HecEventEncoder.writeString("message", out);
+        out.write(':');
+        HecEventEncoder.writeValue(MESSAGE_FORMATTER.formatMessage(record), out);
+        out.write(',');
+        HecEventEncoder.writeString("log_source", out);
+        out.write(':');
+        HecEventEncoder.writeValue(getLogSource(), out);
+        String thrown = getThrown();
+        if (thrown != null) {
+            out.write(',');
+            HecEventEncoder.writeString("log_thrown", out);
+            out.write(':');
+            HecEventEncoder.writeString(thrown, out);
+        }
+        out.write('}');
+    }
+
+    private String getLogSource() {
+        if (record.getSourceClassName() == null) {
+            return record.getLoggerName();
+        }
+        if (record.getSourceMethodName() == null) {
+            return record.getSourceClassName();
+        }
+        return record.getSourceClassName() + " " + record.getSourceMethodName();
+    }
+
+    /**
+     * @return stack trace of warnings and errors, or null
+     */
+    private String getThrown() {
+        if (record.getLevel().intValue() <= Level.INFO.intValue() || record.getThrown() == null) {
+            return null;
+        }
+        StringWriter sw = new StringWriter();
+        try (PrintWriter pw = new PrintWriter(sw)) {
+            record.getThrown().printStackTrace(pw);
+        }
+        return sw.toString();
+    }
+
+    /**
+     * @return the log record time instead of the time this event was created
+     */
+    @Override
+    public long getTime() {
+        return record.getMillis();
+    }
+
+    /**
+     * @return the source set explicitly, or logger://&lt;logger name&gt;
+     */
+    @Override
+    public String getSource() {
+        String source = super.getSource();
+        return source != null ? source : SOURCE_PREFIX + record.getLoggerName();
+    }
+}
@@ -1,16 +1,35 @@
 package com.khulnasoft.khulnasoftjenkins.utils;
 
+import com.khulnasoft.khulnasoftjenkins.Constants;
+
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 
 /**
  * Utility for decoding console output to plain text
+ * <p>
+ * The decoder works on utf-8 bytes in place, it strips
+ * <ul>
+ * <li>Jenkins ConsoleNote, ESC[8mha:&lt;base64&gt;ESC[0m, which hides serialized annotations in the log</li>
+ * <li>CSI sequences, ESC [ parameters intermediates final, such as colors and cursor movement</li>
+ * <li>OSC, DCS, SOS, PM and APC strings, terminated by BEL (OSC only) or ST, such as hyperlinks and window titles</li>
+ * <li>other escape sequences, ESC intermediates final</li>
+ * </ul>
+ * An incomplete sequence at the end of the buffer is kept as is, a note without postamble is treated as CSI.
+ * Text between sequences is copied to the output in runs, no intermediate String is created.
  */
 public class PlainTextConsoleUtils {
+    private static final byte ESC = 0x1B;
+    private static final byte BEL = 0x07;
+    // hudson.console.ConsoleNote.PREAMBLE_STR and POSTAMBLE_STR
+    private static final byte[] NOTE_PREAMBLE = "\u001B[8mha:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NOTE_POSTAMBLE = "\u001B[0m".getBytes(StandardCharsets.US_ASCII);
 
     /**
-     * Decode console output buffer to plain text
+     * Decode console output buffer to plain text, console notes and ANSI escape sequences are stripped
+     * unless {@link Constants#DECODE_PIPELINE_CONSOLE} is turned off, in which case the bytes are copied as is
      * @param buffer the buffer containing console data
      * @param length the length of data to decode
      * @param output the output stream to write decoded text
@@ -20,30 +39,165 @@ public class PlainTextConsoleUtils {
         if (buffer == null || length <= 0) {
             return;
         }
+        if (!Constants.DECODE_PIPELINE_CONSOLE) {
+            output.write(buffer, 0, length);
+            return;
+        }
+        stripEscapes(buffer, 0, length, output);
+    }
+
+    /**
+     * Copy the text to output, skip console notes and escape sequences
+     * @param buffer the buffer containing console data
+     * @param offset start of data
+     * @param length the length of data
+     * @param output the output stream to write plain text
+     * @throws IOException if writing fails
+     */
+    public static void stripEscapes(byte[] buffer, int offset, int length, OutputStream output) throws IOException {
+        int end = offset + length;
+        int start = offset;
+        int i = offset;
+        while (i < end) {
+            if (buffer[i] != ESC) {
+                i++;
+                continue;
+            }
+            int next = skipSequence(buffer, i, end);
+            if (next < 0) {
+                i++;
+                continue;
+            }
+            if (i > start) {
+                output.write(buffer, start, i - start);
+            }
+            start = next;
+            i = next;
+        }
+        if (end > start) {
+            output.write(buffer, start, end - start);
+        }
+    }
+
+    /**
+     * @param buffer the buffer
+     * @param pos    position of ESC
+     * @param end    end of data
+     * @return position after the sequence, or -1 if it is not a complete sequence
+     */
+    private static int skipSequence(byte[] buffer, int pos, int end) {
+        if (pos + 1 >= end) {
+            return -1;
+        }
+        if (startsWith(buffer, pos, end, NOTE_PREAMBLE)) {
+            // base64 payload never contains ESC, the first postamble closes the note
+            int postamble = indexOf(buffer, pos + NOTE_PREAMBLE.length, end, NOTE_POSTAMBLE);
+            if (postamble >= 0) {
+                return postamble + NOTE_POSTAMBLE.length;
+            }
+        }
+        byte type = buffer[pos + 1];
+        switch (type) {
+            case '[':
+                return skipControlSequence(buffer, pos + 2, end);
+            case ']':
+                return skipString(buffer, pos + 2, end, true);
+            case 'P':
+            case 'X':
+            case '^':
+            case '_':
+                return skipString(buffer, pos + 2, end, false);
+            default:
+                return skipEscape(buffer, pos + 1, end);
+        }
+    }
+
+    /**
+     * CSI sequence is ESC [ followed by parameter bytes 0x30-0x3F, intermediate bytes 0x20-0x2F and a final byte 0x40-0x7E
+     */
+    private static int skipControlSequence(byte[] buffer, int pos, int end) {
+        while (pos < end && buffer[pos] >= 0x30 && buffer[pos] <= 0x3F) {
+            pos++;
+        }
+        while (pos < end && buffer[pos] >= 0x20 && buffer[pos] <= 0x2F) {
+            pos++;
+        }
+        if (pos < end && buffer[pos] >= 0x40 && buffer[pos] <= 0x7E) {
+            return pos + 1;
+        }
+        return -1;
+    }
 
-        // For this implementation, we'll assume the buffer contains UTF-8 text
-        // In a real implementation, this might need to handle Jenkins' console encoding
-        String text = new String(buffer, 0, length, StandardCharsets.UTF_8);
+    /**
+     * Control string is terminated by ST (ESC \), xterm also accepts BEL for OSC
+     */
+    private static int skipString(byte[] buffer, int pos, int end, boolean belTerminates) {
+        for (; pos < end; pos++) {
+            if (buffer[pos] == BEL && belTerminates) {
+                return pos + 1;
+            }
+            if (buffer[pos] == ESC && pos + 1 < end && buffer[pos + 1] == '\\') {
+                return pos + 2;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Other escape sequence is ESC followed by intermediate bytes 0x20-0x2F and a final byte 0x30-0x7E, e.g. ESC ( B
+     */
+    private static int skipEscape(byte[] buffer, int pos, int end) {
+        while (pos < end && buffer[pos] >= 0x20 && buffer[pos] <= 0x2F) {
+            pos++;
+        }
+        if (pos < end && buffer[pos] >= 0x30 && buffer[pos] <= 0x7E) {
+            return pos + 1;
+        }
+        return -1;
+    }
 
-        // Basic cleanup - remove ANSI escape codes if present
-        text = removeAnsiEscapeCodes(text);
+    private static boolean startsWith(byte[] buffer, int pos, int end, byte[] prefix) {
+        if (end - pos < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[pos + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        // Write the cleaned text
-        output.write(text.getBytes(StandardCharsets.UTF_8));
+    private static int indexOf(byte[] buffer, int from, int end, byte[] target) {
+        for (int i = from; i <= end - target.length; i++) {
+            if (buffer[i] == target[0] && startsWith(buffer, i, end, target)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
-     * Remove ANSI escape codes from text
+     * Remove console notes and ANSI escape codes from text
      * @param text the text to clean
-     * @return text without ANSI escape codes
+     * @return text without escape codes
      */
     private static String removeAnsiEscapeCodes(String text) {
         if (text == null) {
             return null;
         }
-
-        // Simple regex to remove ANSI escape sequences
-        return text.replaceAll("\\x1B\\[[0-9;]*[mG]", "");
+        if (text.indexOf(ESC) < 0) {
+            return text;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length);
+        try {
+            stripEscapes(bytes, 0, bytes.length, output);
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
     }
 
     /**
@@ -0,0 +1,204 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import com.khulnasoft.khulnasoftjenkins.Constants;
+import jenkins.util.Timer;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.khulnasoft.khulnasoftjenkins.Constants.POST_BUILD_JOB_QUEUE_SIZE;
+import static com.khulnasoft.khulnasoftjenkins.Constants.POST_BUILD_QUEUE_SIZE;
+import static com.khulnasoft.khulnasoftjenkins.Constants.POST_BUILD_THREADS;
+import static com.khulnasoft.khulnasoftjenkins.Constants.POST_BUILD_TIMEOUT_SECONDS;
+import static com.khulnasoft.khulnasoftjenkins.model.EventType.QUEUE_INFO;
+
+/**
+ * Run post-build reporting, e.g. build events, test reports and user scripts, off the RunListener thread,
+ * so a slow report does not delay executor release and build finalization.
+ * <p>
+ * Tasks of the same job run one at a time in submission order, tasks of different jobs run in parallel on
+ * {@link Constants#POST_BUILD_THREADS} threads. The caller never waits: once {@link Constants#POST_BUILD_QUEUE_SIZE}
+ * tasks are pending, or {@link Constants#POST_BUILD_JOB_QUEUE_SIZE} tasks of its job are waiting, a new task is dropped
+ * and counted in the metrics. A task running longer than {@link Constants#POST_BUILD_TIMEOUT_SECONDS} is interrupted, the next task of the job
+ * starts once it returned.
+ */
+public class PostBuildExecutor {
+    private static final Logger LOG = Logger.getLogger(PostBuildExecutor.class.getName());
+    private static final String TAG_NAME = "post_build_executor";
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final PostBuildExecutor INSTANCE = new PostBuildExecutor(POST_BUILD_THREADS, POST_BUILD_QUEUE_SIZE,
+            POST_BUILD_JOB_QUEUE_SIZE, TimeUnit.SECONDS.toMillis(POST_BUILD_TIMEOUT_SECONDS));
+
+    private final ThreadPoolExecutor executor;
+    private final int maxPending;
+    private final int maxJobPending;
+    private final long timeoutMillis;
+    // tasks waiting for the running task of the same job, a job is present while it has a task running
+    private final Map<String, ArrayDeque<Task>> jobQueues = new HashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // longest wait in queue since last metrics
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+
+    PostBuildExecutor(int threads, int maxPending, int maxJobPending, long timeoutMillis) {
+        this.maxPending = maxPending;
+        this.maxJobPending = maxJobPending;
+        this.timeoutMillis = timeoutMillis;
+        // pending tasks are bounded by submit, the pool queue only holds jobs ready to run
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "khulnasoft-post-build-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static PostBuildExecutor get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Schedule the task after previously submitted tasks of the same job, drop it if the queue is full
+     *
+     * @param jobName     job full name, tasks with the same name run in submission order
+     * @param description used in log messages, e.g. job name and build number
+     * @param action      the task, exceptions are logged
+     * @return false if the task was dropped
+     */
+    public boolean submit(String jobName, String description, Runnable action) {
+        Task task = new Task(jobName, description, action);
+        submitted.incrementAndGet();
+        synchronized (jobQueues) {
+            ArrayDeque<Task> queue = jobQueues.get(jobName);
+            if (pending.get() >= maxPending || (queue != null && queue.size() >= maxJobPending)) {
+                long count = dropped.incrementAndGet();
+                if (count % 100 == 1) {
+                    LOG.log(Level.WARNING, "post-build queue is full, dropped {0}, {1} tasks dropped so far",
+                            new Object[]{description, count});
+                }
+                return false;
+            }
+            pending.incrementAndGet();
+            if (queue != null) {
+                queue.add(task);
+                return true;
+            }
+            jobQueues.put(jobName, new ArrayDeque<>());
+        }
+        executor.execute(() -> run(task));
+        return true;
+    }
+
+    private void run(Task task) {
+        long waitMillis = System.currentTimeMillis() - task.submitTime;
+        maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+        ScheduledFuture<?> watchdog = null;
+        if (timeoutMillis > 0) {
+            Thread thread = Thread.currentThread();
+            watchdog = Timer.get().schedule(() -> {
+                synchronized (task) {
+                    // the task may have completed after the timer fired, then the thread runs something else
+                    if (!task.finished.compareAndSet(false, true)) {
+                        return;
+                    }
+                    thread.interrupt();
+                }
+                timedOut.incrementAndGet();
+                LOG.log(Level.WARNING, "post-build task {0} did not complete in {1} ms, interrupted",
+                        new Object[]{task.description, timeoutMillis});
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        try {
+            task.action.run();
+            completed.incrementAndGet();
+        } catch (Throwable e) {
+            // groovy closures may throw checked exceptions without declaring them
+            failed.incrementAndGet();
+            LOG.log(Level.WARNING, "post-build task " + task.description + " failed", e);
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+        } finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+                if (!task.finished.compareAndSet(false, true)) {
+                    // the watchdog won, wait until it interrupted, then clear it, the pool thread moves on to other jobs
+                    synchronized (task) {
+                        Thread.interrupted();
+                    }
+                }
+            }
+            pending.decrementAndGet();
+            Task next;
+            synchronized (jobQueues) {
+                ArrayDeque<Task> queue = jobQueues.get(task.jobName);
+                next = queue.poll();
+                if (next == null) {
+                    jobQueues.remove(task.jobName);
+                }
+            }
+            if (next != null) {
+                // back to the pool queue, so other jobs get their turn
+                executor.execute(() -> run(next));
+            }
+        }
+    }
+
+    /**
+     * @return number of tasks submitted but not completed
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Send the counters, pending and running tasks, and the longest queue wait since last call
+     */
+    public void sendMetrics() {
+        int jobs;
+        synchronized (jobQueues) {
+            jobs = jobQueues.size();
+        }
+        new EventBuilder(QUEUE_INFO)
+                .put(Constants.TAG, TAG_NAME)
+                .put("pending", pending.get())
+                .put("active", executor.getActiveCount())
+                .put("jobs", jobs)
+                .put("submitted", submitted.get())
+                .put("completed", completed.get())
+                .put("failed", failed.get())
+                .put("timed_out", timedOut.get())
+                .put("dropped", dropped.get())
+                .put("max_wait_ms", maxWaitMillis.getAndSet(0))
+                .send();
+    }
+
+    private static class Task {
+        private final String jobName;
+        private final String description;
+        private final Runnable action;
+        private final long submitTime = System.currentTimeMillis();
+        // set by whichever comes first, the task returning or the watchdog interrupting it
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        Task(String jobName, String description, Runnable action) {
+            this.jobName = jobName;
+            this.description = description;
+            this.action = action;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free multi-producer multi-consumer queue on a ring of slots.
+ * <p>
+ * Each slot carries a sequence number telling whether it is free for the producer of a given position
+ * or holds an element for the consumer of that position, so producers and consumers only compete with a CAS
+ * on their own cursor, never on a lock (D. Vyukov's bounded MPMC queue)
+ *
+ * @param <E> element type
+ */
+public class RingBuffer<E> {
+    private final int mask;
+    private final AtomicReferenceArray<E> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity min capacity, rounded up to power of two
+     */
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @param element the element, not null
+     * @return false if the buffer is full
+     */
+    public boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.set(index, element);
+                    // publish to the consumer of this position
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                // the slot still holds the element from last lap
+                return false;
+            }
+            // otherwise another producer took the position, retry with the new tail
+        }
+    }
+
+    /**
+     * @return the oldest element, or null if the buffer is empty
+     */
+    public E poll() {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long diff = sequences.get(index) - (position + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = slots.get(index);
+                    slots.set(index, null);
+                    // free the slot for the producer of next lap
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+            } else if (diff < 0) {
+                // not published yet
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Pass elements to the consumer in place, no intermediate collection is built
+     *
+     * @param consumer the consumer
+     * @param max      max number of elements to drain
+     * @return number of elements drained
+     */
+    public int drain(Consumer<E> consumer, int max) {
+        int count = 0;
+        E element;
+        while (count < max && (element = poll()) != null) {
+            consumer.accept(element);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return approximate number of elements, exact when there is no concurrent update
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,373 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import com.khulnasoft.khulnasoftjenkins.KhulnasoftJenkinsInstallation;
+import com.khulnasoft.khulnasoftjenkins.model.EventRecord;
+import com.khulnasoft.khulnasoftjenkins.model.EventType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal which holds events on disk when the in-memory queue is full or the endpoint is down.
+ * <p>
+ * The journal is a list of memory mapped segment files, named by sequence number so they sort in write order.
+ * Each segment starts with a header holding the committed read offset, so entries which had been sent are skipped
+ * after restart. An entry is [int length][byte kind][int key length][event type key][int source length][source][payload],
+ * the length is written after the body so a partially written entry is never read back.
+ * Fully consumed segments are deleted.
+ */
+public class SpillJournal {
+    private static final Logger LOG = Logger.getLogger(SpillJournal.class.getName());
+    private static final String SUFFIX = ".seg";
+    private static final int MAGIC = 0x4B53504C;
+    // magic and read offset
+    private static final int HEADER_SIZE = 8;
+    private static final int READ_OFFSET_POS = 4;
+    private static final byte KIND_JSON = 1;
+    private static final byte KIND_RAW = 2;
+
+    private final File dir;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private long nextSequence;
+    private volatile boolean pending;
+
+    /**
+     * @param dir         the directory to keep segment files
+     * @param segmentSize size of each segment file, an entry larger than the segment is rejected
+     * @param maxSegments max number of segment files, entries are rejected when all are full
+     */
+    public SpillJournal(File dir, int segmentSize, int maxSegments) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * Open existing segments left by previous run
+     *
+     * @throws IOException if the directory can not be created or segments can not be mapped
+     */
+    public synchronized void open() throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can not create directory " + dir);
+        }
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                long sequence;
+                try {
+                    sequence = Long.parseLong(file.getName().substring(0, file.getName().length() - SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                nextSequence = Math.max(nextSequence, sequence + 1);
+                Segment segment = Segment.open(file, 0);
+                if (segment == null) {
+                    LOG.log(Level.WARNING, "discard corrupted spill segment {0}", file);
+                    delete(file);
+                } else if (segment.isConsumed()) {
+                    segment.delete();
+                } else {
+                    segments.addLast(segment);
+                }
+            }
+        }
+        pending = !segments.isEmpty();
+        if (pending) {
+            LOG.log(Level.INFO, "found {0} spill segments in {1}, will replay", new Object[]{segments.size(), dir});
+        }
+    }
+
+    /**
+     * @return true if there are entries not replayed yet
+     */
+    public boolean hasPending() {
+        return pending;
+    }
+
+    /**
+     * Append one event
+     *
+     * @param record the event record
+     * @param config the plugin config, json events are encoded with the metadata when spilled
+     * @return true if appended, false if the journal is full
+     */
+    public boolean append(EventRecord record, KhulnasoftJenkinsInstallation config) {
+        try {
+            if (record.isRaw()) {
+                byte[] text = record.getRawData();
+                return append(KIND_RAW, record.getEventType(), record.getSource(), text.length, out -> out.write(text));
+            }
+            byte[] json;
+            if (record.isEncoded()) {
+                json = record.getRawData();
+            } else {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                HecEventEncoder.encode(record, config, buffer);
+                json = buffer.toByteArray();
+            }
+            return append(KIND_JSON, record.getEventType(), record.getSource(), json.length, out -> out.write(json));
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "failed to spill event " + record, e);
+            return false;
+        }
+    }
+
+    /**
+     * Append all events in the batch as one entry
+     *
+     * @param batch the batch failed to post
+     * @return true if appended, false if the journal is full
+     */
+    public boolean append(EventBatch batch) {
+        try {
+            return append(batch.isRaw() ? KIND_RAW : KIND_JSON, batch.getEventType(), batch.getSource(),
+                    batch.size(), batch::writeTo);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "failed to spill " + batch.getCount() + " events", e);
+            return false;
+        }
+    }
+
+    private synchronized boolean append(byte kind, EventType eventType, String source, int payloadLength,
+                                        PayloadWriter writer) throws IOException {
+        byte[] key = eventType == null ? new byte[0] : eventType.getKey().getBytes(StandardCharsets.UTF_8);
+        byte[] sourceBytes = source == null ? null : source.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 1 + 4 + key.length + 4 + (sourceBytes == null ? 0 : sourceBytes.length) + payloadLength;
+        if (HEADER_SIZE + 4 + bodyLength > segmentSize) {
+            LOG.log(Level.WARNING, "entry size {0} exceeds spill segment size {1}", new Object[]{bodyLength, segmentSize});
+            return false;
+        }
+        Segment tail = segments.peekLast();
+        if (tail == null || !tail.hasRoom(4 + bodyLength)) {
+            if (segments.size() >= maxSegments) {
+                return false;
+            }
+            File file = new File(dir, String.format("%020d%s", nextSequence++, SUFFIX));
+            tail = Segment.open(file, segmentSize);
+            segments.addLast(tail);
+        }
+        MappedByteBuffer map = tail.map;
+        int start = tail.writePos;
+        map.position(start + 4);
+        map.put(kind);
+        map.putInt(key.length);
+        map.put(key);
+        if (sourceBytes == null) {
+            map.putInt(-1);
+        } else {
+            map.putInt(sourceBytes.length);
+            map.put(sourceBytes);
+        }
+        writer.write(new MappedOutputStream(map));
+        // publish the entry after the body is completely written
+        map.putInt(start, bodyLength);
+        tail.writePos = start + 4 + bodyLength;
+        pending = true;
+        return true;
+    }
+
+    /**
+     * Take the oldest entry not taken yet. The entry stays on disk until {@link #commit()} is called,
+     * so it is replayed again after restart if the process died before it was sent
+     *
+     * @return the event, or null if all entries had been taken
+     */
+    public synchronized EventRecord poll() {
+        for (Segment segment : segments) {
+            if (segment.readPos < segment.writePos) {
+                return segment.read();
+            }
+        }
+        pending = false;
+        return null;
+    }
+
+    /**
+     * Put back the entries taken since the last {@link #commit()}, they are taken again in the same order
+     */
+    public synchronized void rewind() {
+        for (Segment segment : segments) {
+            segment.readPos = segment.map.getInt(READ_OFFSET_POS);
+            if (!segment.isConsumed()) {
+                pending = true;
+            }
+        }
+    }
+
+    /**
+     * Persist the read offset of all taken entries, and delete segments which are fully consumed
+     */
+    public synchronized void commit() {
+        while (!segments.isEmpty()) {
+            Segment head = segments.peekFirst();
+            head.map.putInt(READ_OFFSET_POS, head.readPos);
+            // keep the last segment for writing
+            if (!head.isConsumed() || head == segments.peekLast()) {
+                break;
+            }
+            segments.removeFirst();
+            head.delete();
+        }
+    }
+
+    /**
+     * Flush the segments to disk
+     */
+    public synchronized void force() {
+        for (Segment segment : segments) {
+            segment.map.force();
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete()) {
+            // mapped file can not be deleted on windows until the buffer is garbage collected
+            file.deleteOnExit();
+        }
+    }
+
+    private interface PayloadWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private static class Segment {
+        final File file;
+        final MappedByteBuffer map;
+        int readPos;
+        int writePos;
+
+        private Segment(File file, MappedByteBuffer map) {
+            this.file = file;
+            this.map = map;
+        }
+
+        /**
+         * @param file    the segment file
+         * @param newSize size of the new segment, or 0 to open an existing one
+         * @return the segment, or null if the existing file is not a valid segment
+         */
+        static Segment open(File file, int newSize) throws IOException {
+            MappedByteBuffer map;
+            boolean create = newSize > 0;
+            int size = newSize;
+            if (!create) {
+                size = (int) file.length();
+                if (size < HEADER_SIZE) {
+                    return null;
+                }
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // the mapping stays valid after the channel is closed
+                map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            Segment segment = new Segment(file, map);
+            if (create) {
+                map.putInt(0, MAGIC);
+                map.putInt(READ_OFFSET_POS, HEADER_SIZE);
+                segment.readPos = HEADER_SIZE;
+                segment.writePos = HEADER_SIZE;
+                return segment;
+            }
+            int readPos = map.getInt(READ_OFFSET_POS);
+            if (map.getInt(0) != MAGIC || readPos < HEADER_SIZE || readPos > size) {
+                return null;
+            }
+            // find the end of written entries, unwritten area is zero filled
+            int pos = HEADER_SIZE;
+            while (pos + 4 <= size) {
+                int length = map.getInt(pos);
+                if (length <= 0 || pos + 4 + length > size) {
+                    break;
+                }
+                pos += 4 + length;
+            }
+            segment.writePos = pos;
+            segment.readPos = Math.min(readPos, pos);
+            return segment;
+        }
+
+        boolean hasRoom(int entrySize) {
+            return writePos + entrySize <= map.capacity();
+        }
+
+        boolean isConsumed() {
+            return readPos >= writePos;
+        }
+
+        EventRecord read() {
+            int bodyLength = map.getInt(readPos);
+            int pos = readPos + 4;
+            int end = pos + bodyLength;
+            byte kind = map.get(pos++);
+            int keyLength = map.getInt(pos);
+            pos += 4;
+            String key = readString(pos, keyLength);
+            pos += keyLength;
+            int sourceLength = map.getInt(pos);
+            pos += 4;
+            String source = null;
+            if (sourceLength >= 0) {
+                source = readString(pos, sourceLength);
+                pos += sourceLength;
+            }
+            byte[] payload = new byte[end - pos];
+            map.position(pos);
+            map.get(payload);
+            readPos = end;
+
+            EventType eventType = EventType.fromKey(key);
+            if (eventType == null) {
+                eventType = EventType.LOG;
+            }
+            EventRecord record = kind == KIND_RAW ? new EventRecord(payload, eventType)
+                    : EventRecord.encoded(payload, eventType);
+            record.setSource(source);
+            return record;
+        }
+
+        private String readString(int pos, int length) {
+            byte[] bytes = new byte[length];
+            map.position(pos);
+            map.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        void delete() {
+            SpillJournal.delete(file);
+        }
+    }
+
+    private static class MappedOutputStream extends OutputStream {
+        private final MappedByteBuffer map;
+
+        MappedOutputStream(MappedByteBuffer map) {
+            this.map = map;
+        }
+
+        @Override
+        public void write(int b) {
+            map.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            map.put(b, off, len);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.khulnasoft.khulnasoftjenkins.utils;
 
+import com.google.common.collect.Iterables;
 import com.khulnasoft.khulnasoftjenkins.model.AbstractTestResultAdapter;
 import com.khulnasoft.khulnasoftjenkins.model.EmptyTestCaseGroup;
 import com.khulnasoft.khulnasoftjenkins.model.JunitTestCaseGroup;
@@ -10,9 +11,12 @@ import hudson.tasks.test.AbstractTestResultAction;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import static com.khulnasoft.khulnasoftjenkins.utils.LogEventHelper.hasPublisherName;
 
@@ -26,22 +30,7 @@ public class TestCaseResultUtils {
      * @return A list of JunitTestCaseGroup
      */
     public static <T extends TestResult> List<JunitTestCaseGroup> split(@NonNull List<T> results, int pageSize) {
-        List<JunitTestCaseGroup> testCasesCollect = new ArrayList<>();
-        if (results.isEmpty()) {
-            return testCasesCollect;
-        }
-        JunitTestCaseGroup group = null;
-        int count = 1;
-        for (T testCase : results) {
-            if (count % pageSize == 1) {
-                //new page
-                group = new JunitTestCaseGroup();
-                testCasesCollect.add(group);
-            }
-            count++;
-            group.add(testCase);
-        }
-        return testCasesCollect;
+        return toList(new TestCasePager(results.iterator(), pageSize));
     }
 
     /**
@@ -50,19 +39,10 @@ public class TestCaseResultUtils {
      * @return A list of JunitTestCaseGroup
      */
     public static List<JunitTestCaseGroup> splitRaw(AbstractTestResultAction resultAction, int pageSize) {
-        List<JunitTestCaseGroup> testCasesCollect = new ArrayList<>();
-        JunitTestCaseGroup group = new JunitTestCaseGroup();
-        testCasesCollect.add(group);
-        List<TestResult> results = new ArrayList<>();
-        results.addAll(resultAction.getFailedTests());
-        results.addAll(resultAction.getSkippedTests());
-        results.addAll(resultAction.getPassedTests());
-        for (TestResult testCase : results) {
-            group.add(testCase);
-            if (group.getTotal() > pageSize) {
-                group = new JunitTestCaseGroup();
-                testCasesCollect.add(group);
-            }
+        Iterator<TestResult> testCases = Iterables.concat(AbstractTestResultAdapter.getTestResultSources(resultAction)).iterator();
+        List<JunitTestCaseGroup> testCasesCollect = toList(new TestCasePager(testCases, pageSize));
+        if (testCasesCollect.isEmpty()) {
+            testCasesCollect.add(new JunitTestCaseGroup());
         }
         return testCasesCollect;
     }
@@ -90,31 +70,54 @@ public class TestCaseResultUtils {
      * @return A list of JunitTestCaseGroup
      */
     public static List<JunitTestCaseGroup> getBuildReport(Run build, int pageSize, List<String> ignoredTestActions) {
-        List<JunitTestCaseGroup> junitReports = new ArrayList<>();
+        return toList(getBuildReportPages(build, pageSize, ignoredTestActions));
+    }
+
+    /**
+     * Same pages as {@link #getBuildReport(Run, int, List)}, but each page is built when it is requested,
+     * so only the page being processed is held in memory
+     *
+     * @param build              Jenkins build
+     * @param pageSize           how many test cases to hold in one page
+     * @param ignoredTestActions test action list to be ignored
+     * @return iterator of JunitTestCaseGroup
+     */
+    @NonNull
+    public static Iterator<JunitTestCaseGroup> getBuildReportPages(Run build, int pageSize, List<String> ignoredTestActions) {
         if (build == null) {
-            return junitReports;
+            return Collections.emptyIterator();
+        }
+        Iterator<TestResult> testCases = getTestCases(build, ignoredTestActions);
+        if (testCases.hasNext()) {
+            return new TestCasePager(testCases, pageSize);
+        }
+        EmptyTestCaseGroup emptyReport = new EmptyTestCaseGroup();
+        if (build.getResult() != Result.SUCCESS &&
+                (hasPublisherName("junit.JUnitResultArchiver", build) || hasPublisherName("testng.Publisher", build))) {
+            emptyReport.setWarning(true);
         }
+        return Collections.<JunitTestCaseGroup>singletonList(emptyReport).iterator();
+    }
+
+    /**
+     * @param build              Jenkins build
+     * @param ignoredTestActions test action list to be ignored
+     * @return test cases of the test result actions, or of AbstractTestResultAction as last resort
+     */
+    private static Iterator<TestResult> getTestCases(@NonNull Run build, List<String> ignoredTestActions) {
         if (ignoredTestActions == null) {
-            ignoredTestActions = new ArrayList<>();
+            ignoredTestActions = Collections.emptyList();
         }
-        List<TestResult> results = AbstractTestResultAdapter.getTestResult(build, ignoredTestActions);
-        junitReports = split(results, pageSize);
-        if (junitReports.isEmpty()) {
+        Iterator<TestResult> testCases = Iterables.concat(
+                AbstractTestResultAdapter.getTestResultSources(build, ignoredTestActions)).iterator();
+        if (!testCases.hasNext()) {
             //last resort, try AbstractTestResultAction
-            AbstractTestResultAction abstractTestResultAction = build.getAction(AbstractTestResultAction.class);
+            AbstractTestResultAction<?> abstractTestResultAction = build.getAction(AbstractTestResultAction.class);
             if (abstractTestResultAction != null && !ignoredTestActions.contains(abstractTestResultAction.getClass().getName())) {
-                junitReports = splitRaw(abstractTestResultAction, pageSize);
-            }
-        }
-        if (junitReports.isEmpty()) {
-            EmptyTestCaseGroup emptyReport = new EmptyTestCaseGroup();
-            if (build.getResult() != Result.SUCCESS &&
-                    (hasPublisherName("junit.JUnitResultArchiver", build) || hasPublisherName("testng.Publisher", build))) {
-                emptyReport.setWarning(true);
+                testCases = Iterables.concat(AbstractTestResultAdapter.getTestResultSources(abstractTestResultAction)).iterator();
             }
-            junitReports.add(emptyReport);
         }
-        return junitReports;
+        return testCases;
     }
 
     /**
@@ -122,12 +125,16 @@ public class TestCaseResultUtils {
      * @return summary of failures,passes,skips, total and duration
      */
     public static Map<String, Object> getSummary(Run build) {
-        List<JunitTestCaseGroup> results = getBuildReport(build, Integer.MAX_VALUE);
         Map<String, Object> summary = new HashMap();
-        if (results.isEmpty()) {
+        if (build == null) {
             return summary;
         }
-        JunitTestCaseGroup testResult = results.get(0);
+        //count without keeping the test cases
+        JunitTestCaseGroup testResult = JunitTestCaseGroup.countOnly();
+        Iterator<TestResult> testCases = getTestCases(build, null);
+        while (testCases.hasNext()) {
+            testResult.add(testCases.next());
+        }
         summary.put("failures", testResult.getFailures());
         summary.put("passes", testResult.getPasses());
         summary.put("skips", testResult.getSkips());
@@ -135,4 +142,42 @@ public class TestCaseResultUtils {
         summary.put("duration", testResult.getDuration());
         return summary;
     }
-}
\ No newline at end of file
+
+    private static List<JunitTestCaseGroup> toList(Iterator<JunitTestCaseGroup> pages) {
+        List<JunitTestCaseGroup> testCasesCollect = new ArrayList<>();
+        while (pages.hasNext()) {
+            testCasesCollect.add(pages.next());
+        }
+        return testCasesCollect;
+    }
+
+    /**
+     * Fill pages of pageSize test cases from the iterator, one page per {@link #next()}
+     */
+    private static class TestCasePager implements Iterator<JunitTestCaseGroup> {
+        private final Iterator<? extends TestResult> testCases;
+        private final int pageSize;
+
+        TestCasePager(Iterator<? extends TestResult> testCases, int pageSize) {
+            this.testCases = testCases;
+            this.pageSize = Math.max(1, pageSize);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return testCases.hasNext();
+        }
+
+        @Override
+        public JunitTestCaseGroup next() {
+            if (!testCases.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            JunitTestCaseGroup group = new JunitTestCaseGroup();
+            while (group.getTotal() < pageSize && testCases.hasNext()) {
+                group.add(testCases.next());
+            }
+            return group;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import com.khulnasoft.khulnasoftjenkins.model.EventType;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class EventBuilderTest {
+
+    private static String json(EventBuilder builder) {
+        return new String(builder.build().getRawData(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void writesFloatAsFloat() {
+        assertEquals("{\"coverage\":45.123,\"nan\":null}", json(new EventBuilder(EventType.BUILD_REPORT)
+                .put("coverage", 45.123f)
+                .put("nan", Float.NaN)));
+    }
+
+    @Test
+    public void putOverwritesEarlierValue() {
+        assertEquals("{\"b\":2,\"c\":3,\"a\":4}", json(new EventBuilder(EventType.BUILD_REPORT)
+                .put("a", 1).put("b", 2).put("c", 3).put("a", 4)));
+        assertEquals("{\"a\":1,\"c\":3,\"b\":\"x\"}", json(new EventBuilder(EventType.BUILD_REPORT)
+                .put("a", 1).put("b", 2).put("c", 3).put("b", "x")));
+        assertEquals("{\"a\":1,\"b\":true}", json(new EventBuilder(EventType.BUILD_REPORT)
+                .put("a", 1).put("b", 2).put("b", true)));
+        assertEquals("{\"a\":3}", json(new EventBuilder(EventType.BUILD_REPORT)
+                .put("a", 1).put("a", 2).put("a", 3)));
+    }
+
+    @Test
+    public void putAllOverwritesEarlierValue() {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("user", "admin");
+        fields.put("job_result", "SUCCESS");
+        assertEquals("{\"build_number\":1,\"user\":\"admin\",\"job_result\":\"SUCCESS\"}",
+                json(new EventBuilder(EventType.BUILD_REPORT)
+                        .put("user", "anonymous")
+                        .put("build_number", 1)
+                        .putAll(fields)));
+    }
+
+    @Test
+    public void abandonedBuilderDoesNotExhaustPool() {
+        new EventBuilder(EventType.BUILD_REPORT).put("abandoned", true);
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 1 << 17; i++) {
+            large.append('x');
+        }
+        assertEquals(large.length() + 8, json(new EventBuilder(EventType.BUILD_REPORT).put("x", large.toString())).length());
+        for (int i = 0; i < 3; i++) {
+            EventBuilder outer = new EventBuilder(EventType.BUILD_REPORT).put("outer", i);
+            assertEquals("{\"inner\":" + i + "}", json(new EventBuilder(EventType.BUILD_REPORT).put("inner", i)));
+            assertEquals("{\"outer\":" + i + "}", json(outer));
+        }
+    }
+}
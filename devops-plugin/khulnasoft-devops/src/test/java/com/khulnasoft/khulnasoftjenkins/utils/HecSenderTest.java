@@ -0,0 +1,205 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import com.khulnasoft.khulnasoftjenkins.KhulnasoftJenkinsInstallation;
+import com.khulnasoft.khulnasoftjenkins.model.EventRecord;
+import com.khulnasoft.khulnasoftjenkins.model.EventType;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
+
+import static com.khulnasoft.khulnasoftjenkins.Constants.GZIP_ENABLED;
+import static com.khulnasoft.khulnasoftjenkins.Constants.GZIP_THRESHOLD;
+import static com.khulnasoft.khulnasoftjenkins.Constants.JSON_ENDPOINT;
+import static com.khulnasoft.khulnasoftjenkins.Constants.RAW_ENDPOINT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Post batches to a stub HEC server which inflates and counts the payloads
+ */
+public class HecSenderTest {
+    private HttpServer server;
+    // added by the server threads
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+    private int status = 200;
+    private KhulnasoftJenkinsInstallation config;
+    private final HecSender sender = new HecSender();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/services/collector", this::handle);
+        server.start();
+        config = new KhulnasoftJenkinsInstallation(false);
+        config.setEnabled(true);
+        config.setHost(InetAddress.getLoopbackAddress().getHostAddress());
+        config.setPort(server.getAddress().getPort());
+        config.setToken("test-token");
+        config.setUseSSL(false);
+        config.setRawEventEnabled(true);
+        config.setMetadataHost("jenkins-test");
+        config.setMetadataSource("test");
+        KhulnasoftJenkinsInstallation.initOnAgent(config);
+    }
+
+    @After
+    public void tearDown() throws ReflectiveOperationException {
+        server.stop(0);
+        // initOnAgent set the global config, do not leak it to other tests
+        Field cachedConfig = KhulnasoftJenkinsInstallation.class.getDeclaredField("cachedConfig");
+        cachedConfig.setAccessible(true);
+        cachedConfig.set(null, null);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        InputStream body = exchange.getRequestBody();
+        if ("gzip".equals(encoding)) {
+            body = new GZIPInputStream(body);
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        body.transferTo(payload);
+        requests.add(new Request(exchange.getRequestURI().getPath(), exchange.getRequestURI().getRawQuery(),
+                encoding, exchange.getRequestHeaders().getFirst("Authorization"),
+                payload.toString(StandardCharsets.UTF_8)));
+        byte[] response = "{\"text\":\"Success\",\"code\":0}".getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    private EventBatch jsonBatch(int count) throws IOException {
+        EventBatch batch = new EventBatch();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("seq", i);
+            data.put("message", "event number " + i);
+            batch.add(new EventRecord(data, EventType.LOG), config);
+        }
+        return batch;
+    }
+
+    private EventBatch rawBatch(int count, StringBuilder expected) throws IOException {
+        EventBatch batch = new EventBatch(EventType.CONSOLE_LOG, "job/test/1/console");
+        for (int i = 0; i < count; i++) {
+            String line = "console line " + i + "\n";
+            expected.append(line);
+            batch.add(new EventRecord(line.getBytes(StandardCharsets.UTF_8), EventType.CONSOLE_LOG), config);
+        }
+        return batch;
+    }
+
+    @Test
+    public void smallJsonBatchIsNotCompressed() throws IOException {
+        EventBatch batch = jsonBatch(3);
+        assertTrue(batch.size() <= GZIP_THRESHOLD);
+        sender.postJson(batch, config);
+
+        Request request = requests.get(0);
+        assertEquals(JSON_ENDPOINT, request.path);
+        assertNull(request.encoding);
+        assertEquals("Khulnasoft test-token", request.authorization);
+        assertJsonEvents(request.body, 3);
+    }
+
+    @Test
+    public void largeJsonBatchIsCompressed() throws IOException {
+        assumeTrue(GZIP_ENABLED);
+        EventBatch batch = jsonBatch(500);
+        assertTrue(batch.size() > GZIP_THRESHOLD);
+        sender.postJson(batch, config);
+
+        Request request = requests.get(0);
+        assertEquals("gzip", request.encoding);
+        assertEquals(batch.size(), request.body.getBytes(StandardCharsets.UTF_8).length);
+        assertJsonEvents(request.body, 500);
+    }
+
+    @Test
+    public void smallRawBatchIsNotCompressed() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        EventBatch batch = rawBatch(5, expected);
+        assertTrue(batch.size() <= GZIP_THRESHOLD);
+        sender.postRaw(batch, config);
+
+        Request request = requests.get(0);
+        assertEquals(RAW_ENDPOINT, request.path);
+        assertNull(request.encoding);
+        assertTrue(request.query, request.query.contains("source=job%2Ftest%2F1%2Fconsole"));
+        assertEquals(expected.toString(), request.body);
+        assertEquals(5, request.body.split("\n").length);
+    }
+
+    @Test
+    public void largeRawBatchIsCompressed() throws IOException {
+        assumeTrue(GZIP_ENABLED);
+        StringBuilder expected = new StringBuilder();
+        EventBatch batch = rawBatch(2000, expected);
+        assertTrue(batch.size() > GZIP_THRESHOLD);
+        sender.postRaw(batch, config);
+
+        Request request = requests.get(0);
+        assertEquals(RAW_ENDPOINT, request.path);
+        assertEquals("gzip", request.encoding);
+        assertEquals(expected.toString(), request.body);
+        assertEquals(2000, request.body.split("\n").length);
+    }
+
+    @Test
+    public void rejectedBatchThrowsStatus() throws IOException {
+        status = 503;
+        try {
+            sender.postJson(jsonBatch(1), config);
+            fail("expected HecStatusException");
+        } catch (HecStatusException e) {
+            assertEquals(503, e.getStatus());
+        }
+    }
+
+    private static void assertJsonEvents(String body, int count) {
+        String[] lines = body.split("\n");
+        assertEquals(count, lines.length);
+        for (int i = 0; i < count; i++) {
+            assertTrue(lines[i], lines[i].startsWith("{\"time\":"));
+            assertTrue(lines[i], lines[i].contains("\"host\":\"jenkins-test\""));
+            assertTrue(lines[i], lines[i].contains("\"seq\":" + i + ","));
+            assertTrue(lines[i], lines[i].endsWith("}"));
+        }
+    }
+
+    private static class Request {
+        private final String path;
+        private final String query;
+        private final String encoding;
+        private final String authorization;
+        private final String body;
+
+        Request(String path, String query, String encoding, String authorization, String body) {
+            this.path = path;
+            this.query = query;
+            this.encoding = encoding;
+            this.authorization = authorization;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the byte decoder with the regex which was used before, on pipeline style console text.
+ * Not run by surefire, start it with {@link #main(String[])} from the test classpath, e.g.
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.khulnasoft.khulnasoftjenkins.utils.PlainTextConsoleBenchmark
+ * </pre>
+ * The score is the time to process one block of about 64 KiB.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlainTextConsoleBenchmark {
+    private static final String ESC = "\u001B";
+    private static final String NOTE = ESC + "[8mha:////4Kq0nFwR8GJ9Q4yvGpMq6sM9y4GzB3q5NSa4/Pq6cdwAAAA=" + ESC + "[0m";
+    private static final String[] LINES = {
+            NOTE + "[Pipeline] stage\n",
+            NOTE + "[Pipeline] { (Build)\n",
+            NOTE + "[Pipeline] sh\n",
+            "+ mvn -B verify\n",
+            "[INFO] Building khulnasoft-devops 1.10.2-SNAPSHOT\n",
+            ESC + "[1;34mINFO" + ESC + "[0m] Tests run: 42, Failures: 0, Errors: 0, Skipped: 1\n",
+            ESC + "[1;31mERROR" + ESC + "[0m] Failed to execute goal on project khulnasoft-devops\n",
+            "Started by user " + NOTE + "admin\n",
+            "plain output line without any escape sequence, as most of the build output\n",
+    };
+
+    private String text;
+    private byte[] bytes;
+    private final OutputStream sink = new DiscardOutputStream();
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < 1 << 16; i++) {
+            builder.append(LINES[i % LINES.length]);
+        }
+        text = builder.toString();
+        bytes = text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The implementation before the byte decoder, it only strips SGR and cursor column sequences
+     */
+    @Benchmark
+    public String regexRemoveAnsiEscapeCodes() {
+        return text.replaceAll("\\x1B\\[[0-9;]*[mG]", "");
+    }
+
+    @Benchmark
+    public String getPlainText() {
+        return PlainTextConsoleUtils.getPlainText(text);
+    }
+
+    @Benchmark
+    public void decodeConsole(Blackhole blackhole) throws IOException {
+        PlainTextConsoleUtils.decodeConsole(bytes, bytes.length, sink);
+        blackhole.consume(sink);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PlainTextConsoleBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+    private static class DiscardOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.khulnasoft.khulnasoftjenkins.utils;
+
+import com.khulnasoft.khulnasoftjenkins.Constants;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PlainTextConsoleUtilsTest {
+    private static final String ESC = "\u001B";
+    // ConsoleNote as written by Jenkins, ESC[8mha:<base64>ESC[0m
+    private static final String NOTE = ESC + "[8mha:////4Kq0nFwR8GJ9Q4yvGpMq6sM9y4GzB3q5NSa4/Pq6cdwAAAA=" + ESC + "[0m";
+
+    private static String decode(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PlainTextConsoleUtils.decodeConsole(bytes, bytes.length, output);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void plainTextIsCopied() throws IOException {
+        assertEquals("hello world\nsecond line \u00fc\n", decode("hello world\nsecond line \u00fc\n"));
+    }
+
+    @Test
+    public void stripsColors() throws IOException {
+        assertEquals("error: failed\n", decode(ESC + "[1;31merror:" + ESC + "[0m failed\n"));
+    }
+
+    @Test
+    public void stripsCsiWithPrivateParametersAndIntermediates() throws IOException {
+        assertEquals("progress 50%", decode(ESC + "[?25l" + ESC + "[2K" + ESC + "[1G" + "progress 50%" + ESC + "[0 q"));
+    }
+
+    @Test
+    public void stripsOscTerminatedByBel() throws IOException {
+        assertEquals("title set", decode(ESC + "]0;build #1\u0007title set"));
+    }
+
+    @Test
+    public void stripsOscHyperlinkTerminatedBySt() throws IOException {
+        String link = ESC + "]8;;https://example.com/job/1" + ESC + "\\" + "job 1" + ESC + "]8;;" + ESC + "\\";
+        assertEquals("see job 1.", decode("see " + link + "."));
+    }
+
+    @Test
+    public void stripsDcsSosPmApcStrings() throws IOException {
+        assertEquals("abcd", decode("a" + ESC + "Pq#0;2;0;0;0" + ESC + "\\b" + ESC + "Xsos" + ESC + "\\c"
+                + ESC + "^pm" + ESC + "\\" + ESC + "_apc" + ESC + "\\d"));
+    }
+
+    @Test
+    public void belDoesNotTerminateDcs() throws IOException {
+        assertEquals("ab", decode("a" + ESC + "Pdata\u0007more" + ESC + "\\b"));
+    }
+
+    @Test
+    public void stripsOtherEscapeSequences() throws IOException {
+        assertEquals("charset", decode(ESC + "(Bchar" + ESC + "=set" + ESC + "7"));
+    }
+
+    @Test
+    public void stripsConsoleNote() throws IOException {
+        assertEquals("[Pipeline] sh\n+ make\n", decode(NOTE + "[Pipeline] sh\n" + NOTE + "+ make\n"));
+    }
+
+    @Test
+    public void stripsConsoleNoteFollowedByColor() throws IOException {
+        assertEquals("Started by user admin\n", decode("Started by user " + NOTE + ESC + "[1madmin" + ESC + "[0m\n"));
+    }
+
+    @Test
+    public void incompleteSequenceAtEndIsKept() throws IOException {
+        assertEquals("text" + ESC + "[1;3", decode("text" + ESC + "[1;3"));
+        assertEquals("text" + ESC, decode("text" + ESC));
+        assertEquals("text" + ESC + "]0;title", decode("text" + ESC + "]0;title"));
+    }
+
+    @Test
+    public void noteWithoutPostambleIsTreatedAsCsi() throws IOException {
+        assertEquals("ha:payload", decode(ESC + "[8mha:payload"));
+    }
+
+    @Test
+    public void stripsWithinRange() throws IOException {
+        byte[] bytes = ("xx" + ESC + "[32mok" + ESC + "[0myy").getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PlainTextConsoleUtils.stripEscapes(bytes, 2, bytes.length - 4, output);
+        assertEquals("ok", output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void copiesAsIsWhenDecodingIsDisabled() throws IOException {
+        boolean previous = Constants.DECODE_PIPELINE_CONSOLE;
+        Constants.DECODE_PIPELINE_CONSOLE = false;
+        try {
+            String text = NOTE + ESC + "[31mred" + ESC + "[0m";
+            assertEquals(text, decode(text));
+        } finally {
+            Constants.DECODE_PIPELINE_CONSOLE = previous;
+        }
+    }
+
+    @Test
+    public void getPlainText() {
+        assertNull(PlainTextConsoleUtils.getPlainText(null));
+        assertEquals("no escapes", PlainTextConsoleUtils.getPlainText("no escapes"));
+        assertEquals("Finished: SUCCESS \u2713", PlainTextConsoleUtils.getPlainText(NOTE + "Finished: " + ESC + "[32mSUCCESS" + ESC + "[0m \u2713"));
+    }
+}